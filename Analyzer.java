@@ -20,6 +20,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
     public Analyzer(Scope parent) {
         scope = new Scope(parent);
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+        scope.defineFunction("range", "range", Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER), Environment.Type.INTEGER_ITERABLE, args -> Environment.NIL);
+        scope.defineFunction("range", "range", Arrays.asList(Environment.Type.INTEGER, Environment.Type.INTEGER, Environment.Type.INTEGER), Environment.Type.INTEGER_ITERABLE, args -> Environment.NIL);
     }
 
     public Scope getScope() {
@@ -88,8 +90,6 @@ public final class Analyzer implements Ast.Visitor<Void> {
             if (ast.getReturnTypeName().isPresent())
                 returnType = Environment.getType(ast.getReturnTypeName().get());
 
-            scope.defineVariable("returnType", "returnType", returnType, Environment.NIL);
-
             List<String> p = ast.getParameterTypeNames();
             Environment.Type[] paramTypes = new Environment.Type[p.size()];
 
@@ -103,19 +103,18 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
             scope.defineFunction(ast.getName(), ast.getName(), Arrays.asList(paramTypes), returnType, args -> Environment.NIL);
 
-            List<Ast.Stmt> a = ast.getStatements();
-
-            if (!a.isEmpty()) {
-                int i = 0;
-                while (i < ast.getStatements().size()) {
-                    try {
-                        scope = new Scope(scope);
-                        visit(ast.getStatements().get(i));
-                    } finally {
-                        scope = scope.getParent();
-                    }
-                    i++;
+            // parameters, locals and the expected return type share one method scope
+            try {
+                scope = new Scope(scope);
+                scope.defineVariable("returnType", "returnType", returnType, Environment.NIL);
+                for (int i = 0; i < ast.getParameters().size(); i++) {
+                    scope.defineVariable(ast.getParameters().get(i), ast.getParameters().get(i), paramTypes[i], Environment.NIL);
                 }
+                for (Ast.Stmt stmt : ast.getStatements()) {
+                    visit(stmt);
+                }
+            } finally {
+                scope = scope.getParent();
             }
 
             ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameters().size()));
@@ -186,22 +185,22 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(ast.getCondition());
             requireAssignable(Environment.Type.BOOLEAN, ast.getCondition().getType());
 
-            for (int i = 0; i < ast.getElseStatements().size(); i++) {
-                try {
-                       scope = new Scope(scope);
-                       visit(ast.getElseStatements().get(i));
-                } finally {
-                       scope = scope.getParent();
+            try {
+                scope = new Scope(scope);
+                for (Ast.Stmt stmt : ast.getElseStatements()) {
+                    visit(stmt);
                 }
+            } finally {
+                scope = scope.getParent();
             }
 
-            for (int i = 0; i < ast.getThenStatements().size(); i++) {
-                try {
-                    scope = new Scope(scope);
-                    visit(ast.getThenStatements().get(i));
-                } finally {
-                    scope = scope.getParent();
+            try {
+                scope = new Scope(scope);
+                for (Ast.Stmt stmt : ast.getThenStatements()) {
+                    visit(stmt);
                 }
+            } finally {
+                scope = scope.getParent();
             }
 
         } catch (RuntimeException r) {
@@ -221,13 +220,14 @@ public final class Analyzer implements Ast.Visitor<Void> {
             visit(ast.getValue());
             requireAssignable(Environment.Type.INTEGER_ITERABLE, ast.getValue().getType());
 
-            for (Ast.Stmt elem : ast.getStatements()) {
-                try {
-                    scope = new Scope(scope);
-                    scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL);
-                } finally {
-                    scope = scope.getParent();
+            try {
+                scope = new Scope(scope);
+                scope.defineVariable(ast.getName(), ast.getName(), Environment.Type.INTEGER, Environment.NIL);
+                for (Ast.Stmt stmt : ast.getStatements()) {
+                    visit(stmt);
                 }
+            } finally {
+                scope = scope.getParent();
             }
         } catch (RuntimeException r) {
             throw new RuntimeException(r);
@@ -278,7 +278,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
                 ast.setType(Environment.Type.STRING);
             else if (ast.getLiteral() instanceof Character)
                 ast.setType(Environment.Type.CHARACTER);
-            else if (ast.getLiteral() == Environment.NIL)
+            else if (ast.getLiteral() == null || ast.getLiteral() == Environment.NIL)
                 ast.setType(Environment.Type.NIL);
             else if (ast.getLiteral() instanceof Boolean)
                 ast.setType(Environment.Type.BOOLEAN);
@@ -322,6 +322,7 @@ public final class Analyzer implements Ast.Visitor<Void> {
             catch (RuntimeException r) {
                 throw new RuntimeException("Unsuccessful, not a binary type");
             }
+            ast.setType(ast.getExpression().getType());
         } catch (RuntimeException r) {
             throw new RuntimeException(r);
         }
@@ -91,6 +91,8 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Stmt> statements;
         private Environment.Function function = null;
+        private int frameSize = -1;
+        private boolean pure = false;
         public Method(String name, List<String> parameters, List<Stmt> statements)
         {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"),
@@ -131,6 +133,18 @@ public abstract class Ast {
         public void setFunction(Environment.Function function) {
             this.function = function;
         }
+        public int getFrameSize() {
+            return frameSize;
+        }
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+        public boolean isPure() {
+            return pure;
+        }
+        public void setPure(boolean pure) {
+            this.pure = pure;
+        }
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Method &&
@@ -179,6 +193,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private final Optional<Expr> value;
             private Environment.Variable variable;
+            private int slot = -1;
             public Declaration(String name, Optional<Expr> value) {
                 this(name, Optional.empty(), value);
             }
@@ -206,6 +221,12 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+            public int getSlot() {
+                return slot;
+            }
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -255,6 +276,8 @@ public abstract class Ast {
             private final Expr condition;
             private final List<Stmt> thenStatements;
             private final List<Stmt> elseStatements;
+            private int thenFrameSize = -1;
+            private int elseFrameSize = -1;
             public If(Expr condition, List<Stmt> thenStatements, List<Stmt>
                     elseStatements) {
                 this.condition = condition;
@@ -270,6 +293,16 @@ public abstract class Ast {
             public List<Stmt> getElseStatements() {
                 return elseStatements;
             }
+            public int getThenFrameSize() {
+                return thenFrameSize;
+            }
+            public int getElseFrameSize() {
+                return elseFrameSize;
+            }
+            public void setFrameSizes(int thenFrameSize, int elseFrameSize) {
+                this.thenFrameSize = thenFrameSize;
+                this.elseFrameSize = elseFrameSize;
+            }
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -290,6 +323,8 @@ public abstract class Ast {
             private final String name;
             private final Expr value;
             private final List<Stmt> statements;
+            private int frameSize = -1;
+            private List<Assignment> reductions = null;
             public For(String name, Expr value, List<Stmt> statements) {
                 this.name = name;
                 this.value = value;
@@ -304,6 +339,21 @@ public abstract class Ast {
             public List<Stmt> getStatements() {
                 return statements;
             }
+            public int getFrameSize() {
+                return frameSize;
+            }
+            public void setFrameSize(int frameSize) {
+                this.frameSize = frameSize;
+            }
+            public boolean isParallel() {
+                return reductions != null;
+            }
+            public List<Assignment> getReductions() {
+                return reductions;
+            }
+            public void setReductions(List<Assignment> reductions) {
+                this.reductions = reductions;
+            }
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof For &&
@@ -323,6 +373,7 @@ public abstract class Ast {
         public static final class While extends Stmt {
             private final Expr condition;
             private final List<Stmt> statements;
+            private int frameSize = -1;
             public While(Expr condition, List<Stmt> statements) {
                 this.condition = condition;
                 this.statements = statements;
@@ -333,6 +384,12 @@ public abstract class Ast {
             public List<Stmt> getStatements() {
                 return statements;
             }
+            public int getFrameSize() {
+                return frameSize;
+            }
+            public void setFrameSize(int frameSize) {
+                this.frameSize = frameSize;
+            }
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -373,12 +430,19 @@ public abstract class Ast {
         public static final class Literal extends Expr {
             private final Object literal;
             private Environment.Type type = null;
+            private Environment.PlcObject object = null;
             public Literal(Object literal) {
                 this.literal = literal;
             }
             public Object getLiteral() {
                 return literal;
             }
+            public Environment.PlcObject getObject() {
+                if (object == null) {
+                    object = Environment.create(literal);
+                }
+                return object;
+            }
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -441,6 +505,8 @@ public abstract class Ast {
             private final Expr left;
             private final Expr right;
             private Environment.Type type = null;
+            private TypedOperator evaluator = null;
+            private boolean primitive = false;
             public Binary(String operator, Expr left, Expr right) {
                 this.operator = operator;
                 this.left = left;
@@ -465,6 +531,26 @@ public abstract class Ast {
             public void setType(Environment.Type type) {
                 this.type = type;
             }
+            /**
+             * Returns the operator the {@link Interpreter} specialized for the
+             * analyzed types, or null if it hasn't evaluated this expression yet.
+             */
+            public TypedOperator getEvaluator() {
+                return evaluator;
+            }
+            public void setEvaluator(TypedOperator evaluator) {
+                this.evaluator = evaluator;
+            }
+            /**
+             * Returns whether the intermediate results of this expression never
+             * escape it, see {@link EscapeAnalyzer}.
+             */
+            public boolean isPrimitive() {
+                return primitive;
+            }
+            public void setPrimitive(boolean primitive) {
+                this.primitive = primitive;
+            }
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Binary &&
@@ -487,6 +573,8 @@ public abstract class Ast {
             private final Optional<Expr> receiver;
             private final String name;
             private Environment.Variable variable = null;
+            private int depth = -1;
+            private int slot = -1;
             public Access(Optional<Expr> receiver, String name) {
                 this.receiver = receiver;
                 this.name = name;
@@ -506,6 +594,16 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+            public int getDepth() {
+                return depth;
+            }
+            public int getSlot() {
+                return slot;
+            }
+            public void setAddress(int depth, int slot) {
+                this.depth = depth;
+                this.slot = slot;
+            }
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -0,0 +1,159 @@
+package plc.project;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Times the {@link Interpreter} on small programs that each exercise one
+ * optimization, so a change can be measured the same way before and after.
+ * Every case runs in {@link #FORKS} fresh JVMs, so cases can't skew each
+ * other through the JIT or the heap. In each one it's analyzed (and
+ * optionally transformed by a pass) once and then warmed up for at least
+ * {@link #WARMUP} runs and {@link #WARMUP_TIME} before {@link #RUNS} timed
+ * runs. The minimum and median over all forks are reported along with the
+ * result (which should stay the same).
+ * <p>
+ * Run as {@code java plc.project.Benchmarks [case ...]}, without arguments
+ * to run every case. Output is discarded.
+ */
+public final class Benchmarks {
+
+    public static final int FORKS = 3;
+    public static final int WARMUP = 5;
+    public static final Duration WARMUP_TIME = Duration.ofSeconds(2);
+    public static final int RUNS = 10;
+
+    private static final List<Case> CASES = new ArrayList<>();
+
+    static {
+        // one frame per loop rather than a scope per iteration, call and assignment
+        CASES.add(new Case("locals", "DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 300000 DO LET a = i; LET b = a + 1; LET c = b + a; LET d = c - b; s = s + d; i = i + 1; END RETURN s; END"));
+        // Integers stay tagged longs, and only become BigIntegers past a long
+        CASES.add(new Case("integers", "DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 300000 DO s = (s + (i * i)) - (i / 3); i = i + 1; END RETURN s; END"));
+        CASES.add(new Case("big-integers", "DEF main(): Integer DO LET p = 1; LET i = 0; WHILE i < 2000 DO p = p * 3; i = i + 1; END RETURN p - (p - 1); END"));
+        // RETURN is a value passed up rather than an exception
+        CASES.add(new Case("returns", "DEF find(n: Integer): Integer DO LET i = 0; WHILE TRUE DO IF i == n DO RETURN i; END i = i + 1; END END DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 100000 DO s = s + find(i - ((i / 4) * 4)); i = i + 1; END RETURN s; END"));
+        // the right operand of AND/OR is skipped when the left decides
+        CASES.add(new Case("short-circuit", "DEF slow(n: Integer): Boolean DO LET i = 0; WHILE i < 20 DO i = i + 1; END RETURN n > i; END DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 100000 DO IF ((i / 8) * 8) == i AND slow(i) DO s = s + 1; END IF (i > 50) OR slow(i) DO s = s + 1; END i = i + 1; END RETURN s; END"));
+        // arguments are evaluated straight into the callee's frame
+        CASES.add(new Case("calls", "DEF f(a: Integer, b: Integer, c: Integer, d: Integer): Integer DO RETURN ((a + b) + c) - d; END DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 100000 DO s = s + f(i, 1, 2, s); i = i + 1; END RETURN s; END"));
+        // invariant operators computed once before the loop instead of every iteration
+        String invariant = "LET k: Integer = 7; DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 300000 DO s = s + ((k * k) + (k - 1)); i = i + 1; END RETURN s; END";
+        CASES.add(new Case("invariant", invariant));
+        CASES.add(new Case("invariant-hoisted", invariant, ast -> new LoopInvariantHoister().visit(ast), interpreter -> {}));
+        // the overhead of checking a budget at every backedge and call
+        String loop = "DEF inc(n: Integer): Integer DO RETURN n + 1; END DEF main(): Integer DO LET i = 0; WHILE i < 300000 DO i = inc(i); END RETURN i; END";
+        CASES.add(new Case("unbudgeted", loop));
+        CASES.add(new Case("budgeted", loop, interpreter -> interpreter.setBudget(new ExecutionBudget(Long.MAX_VALUE, Duration.ofHours(1)))));
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // a forked JVM measures a single case and prints its times and result
+        if (args.length == 2 && args[0].equals("--fork")) {
+            for (Case benchmark : CASES) {
+                if (benchmark.name.equals(args[1])) {
+                    benchmark.measure();
+                }
+            }
+            return;
+        }
+        List<String> names = Arrays.asList(args);
+        for (Case benchmark : CASES) {
+            if (names.isEmpty() || names.contains(benchmark.name)) {
+                benchmark.run();
+            }
+        }
+    }
+
+    private static final class Case {
+
+        private final String name;
+        private final String source;
+        private final UnaryOperator<Ast.Source> pass;
+        private final Consumer<Interpreter> setup;
+
+        private Case(String name, String source) {
+            this(name, source, interpreter -> {});
+        }
+
+        private Case(String name, String source, Consumer<Interpreter> setup) {
+            this(name, source, UnaryOperator.identity(), setup);
+        }
+
+        private Case(String name, String source, UnaryOperator<Ast.Source> pass, Consumer<Interpreter> setup) {
+            this.name = name;
+            this.source = source;
+            this.pass = pass;
+            this.setup = setup;
+        }
+
+        /**
+         * Measures this case in {@link #FORKS} forked JVMs with the same
+         * classpath and reports the times of all of them together.
+         */
+        private void run() throws IOException, InterruptedException {
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            long[] times = new long[FORKS * RUNS];
+            String result = null;
+            for (int fork = 0; fork < FORKS; fork++) {
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Benchmarks.class.getName(), "--fork", name)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                String line;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                    line = reader.readLine();
+                }
+                if (process.waitFor() != 0 || line == null) {
+                    throw new IllegalStateException("Benchmark " + name + " failed in a forked JVM.");
+                }
+                String[] fields = line.split(" ", RUNS + 1);
+                for (int i = 0; i < RUNS; i++) {
+                    times[fork * RUNS + i] = Long.parseLong(fields[i]);
+                }
+                result = fields[RUNS];
+            }
+            Arrays.sort(times);
+            System.out.printf("%-18s min %8.2f ms  median %8.2f ms  result %s%n", name, times[0] / 1e6, times[times.length / 2] / 1e6, result);
+        }
+
+        /**
+         * Warms this case up and times it in the current JVM, printing the
+         * times in nanoseconds followed by the result on one line.
+         */
+        private void measure() {
+            Lexer.reset();
+            Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+            new Analyzer(new Scope(null)).visit(ast);
+            ast = pass.apply(ast);
+            Object result = null;
+            long warmup = System.nanoTime() + WARMUP_TIME.toNanos();
+            for (int i = 0; i < WARMUP || System.nanoTime() < warmup; i++) {
+                result = execute(ast);
+            }
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                result = execute(ast);
+                line.append(System.nanoTime() - start).append(' ');
+            }
+            System.out.println(line.append(result));
+        }
+
+        private Object execute(Ast.Source ast) {
+            Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(Writer.nullWriter()));
+            setup.accept(interpreter);
+            return interpreter.visit(ast).getValue();
+        }
+
+    }
+
+}
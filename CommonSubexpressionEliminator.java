@@ -0,0 +1,394 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Computes repeated subexpressions of an analyzed {@link Ast.Source} once,
+ * returning a new AST (the input isn't modified, but shares the nodes that
+ * didn't change with it). Within a basic block (a run of expression,
+ * declaration, assignment and return statements) every binary expression
+ * that appears more than once with the same value is evaluated into a
+ * temporary named {@code $cse0}, {@code $cse1}, ... declared before the
+ * statement it first appears in, and the repeats read the temporary. The
+ * largest repeated expression goes first, so {@code (a * b + c) * (a * b + c)}
+ * becomes a single temporary rather than one for {@code a * b}.
+ * <p>
+ * Expressions are hash-consed into keys in which every variable carries a
+ * version that changes whenever it is declared or assigned, so two
+ * occurrences only share a key while they have the same value. Field reads
+ * in a statement that calls something never match, as the call may assign
+ * the field. Since the temporary is evaluated at the start of the statement,
+ * before anything else in it, a shared expression must not be able to fail:
+ * expressions that call anything, go through a receiver, read a variable
+ * that the {@link NilAnalyzer} can't show is never NIL or apply an operator
+ * it finds can fail (a division, a comparison of mixed types, ...) aren't
+ * touched. Nor are the ones in the right operand of an AND or OR, which
+ * might not be evaluated at all.
+ */
+public final class CommonSubexpressionEliminator implements Ast.Visitor<Ast> {
+
+    private final Set<Environment.Variable> fields = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final NilAnalyzer nils = new NilAnalyzer();
+    private int temporaries = 0;
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        nils.visit(ast);
+        ast.getFields().forEach(this::visit);
+        List<Ast.Method> methods = new ArrayList<>();
+        ast.getMethods().forEach(method -> methods.add(visit(method)));
+        return new Ast.Source(ast.getFields(), methods);
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        copy(() -> ast.getVariable(), fields::add);
+        return ast;
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        temporaries = 0;
+        Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements(ast.getStatements()));
+        copy(() -> ast.getFunction(), method::setFunction);
+        return method;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Expression ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.If ast) {
+        return new Ast.Stmt.If(ast.getCondition(), statements(ast.getThenStatements()), statements(ast.getElseStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        return new Ast.Stmt.For(ast.getName(), ast.getValue(), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.While ast) {
+        return new Ast.Stmt.While(ast.getCondition(), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Return ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        return ast;
+    }
+
+    /**
+     * Splits a list of statements into basic blocks at IF, FOR and WHILE
+     * statements, whose own statements are blocks of their own.
+     */
+    private List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> result = new ArrayList<>();
+        List<Ast.Stmt> block = new ArrayList<>();
+        for (Ast.Stmt statement : statements) {
+            if (statement instanceof Ast.Stmt.If || statement instanceof Ast.Stmt.For || statement instanceof Ast.Stmt.While) {
+                result.addAll(eliminate(block));
+                block = new ArrayList<>();
+                result.add((Ast.Stmt) visit(statement));
+            } else {
+                block.add(statement);
+            }
+        }
+        result.addAll(eliminate(block));
+        return result;
+    }
+
+    /**
+     * Replaces the largest repeated expression of a block by a temporary
+     * until nothing repeats.
+     */
+    private List<Ast.Stmt> eliminate(List<Ast.Stmt> block) {
+        while (true) {
+            Numbering numbering = new Numbering();
+            block.forEach(numbering::statement);
+            String best = null;
+            for (Map.Entry<String, Integer> entry : numbering.counts.entrySet()) {
+                if (entry.getValue() > 1 && (best == null || numbering.sizes.get(entry.getKey()) > numbering.sizes.get(best))) {
+                    best = entry.getKey();
+                }
+            }
+            if (best == null) {
+                return block;
+            }
+            Ast.Expr expr = numbering.firsts.get(best);
+            String name = "$cse" + temporaries++;
+            Ast.Stmt.Declaration temporary = new Ast.Stmt.Declaration(name, Optional.empty(), Optional.of(expr));
+            temporary.setVariable(new Environment.Variable(name, name, expr.getType(), Environment.NIL));
+            nils.define(temporary.getVariable(), expr);
+            Replacement replacement = new Replacement(numbering.candidates, best, temporary);
+            List<Ast.Stmt> result = new ArrayList<>();
+            for (Ast.Stmt statement : block) {
+                if (statement == numbering.statements.get(best)) {
+                    result.add(temporary);
+                }
+                result.add(replacement.statement(statement));
+            }
+            block = result;
+        }
+    }
+
+    /**
+     * Assigns keys to the expressions of a block in evaluation order,
+     * counting the candidates: binary expressions without calls, receivers,
+     * variables that may be NIL or operators that can fail, which are always
+     * evaluated.
+     */
+    private final class Numbering {
+
+        private final Map<Ast.Expr, String> candidates = new IdentityHashMap<>();
+        private final Map<String, Integer> counts = new HashMap<>();
+        private final Map<String, Integer> sizes = new HashMap<>();
+        private final Map<String, Ast.Expr> firsts = new HashMap<>();
+        private final Map<String, Ast.Stmt> statements = new HashMap<>();
+        private final Map<String, Integer> versions = new HashMap<>();
+        private int epoch = 0;
+        // how many AND/OR right operands the expression being keyed is in
+        private int conditional = 0;
+        private boolean calls = false;
+        private Ast.Stmt current = null;
+
+        private void statement(Ast.Stmt statement) {
+            current = statement;
+            calls = false;
+            List<Ast.Expr> exprs = new ArrayList<>();
+            String assigned = null;
+            if (statement instanceof Ast.Stmt.Expression) {
+                exprs.add(((Ast.Stmt.Expression) statement).getExpression());
+            } else if (statement instanceof Ast.Stmt.Declaration) {
+                ((Ast.Stmt.Declaration) statement).getValue().ifPresent(exprs::add);
+                assigned = ((Ast.Stmt.Declaration) statement).getName();
+            } else if (statement instanceof Ast.Stmt.Assignment) {
+                Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) statement;
+                if (assignment.getReceiver() instanceof Ast.Expr.Access && !((Ast.Expr.Access) assignment.getReceiver()).getReceiver().isPresent()) {
+                    assigned = ((Ast.Expr.Access) assignment.getReceiver()).getName();
+                } else {
+                    exprs.add(assignment.getReceiver());
+                }
+                exprs.add(assignment.getValue());
+            } else if (statement instanceof Ast.Stmt.Return) {
+                exprs.add(((Ast.Stmt.Return) statement).getValue());
+            }
+            exprs.forEach(expr -> calls |= calls(expr));
+            exprs.forEach(this::key);
+            if (assigned != null) {
+                versions.merge(assigned, 1, Integer::sum);
+            }
+            if (calls) {
+                epoch++;
+            }
+        }
+
+        private String key(Ast.Expr ast) {
+            String key = null;
+            if (ast instanceof Ast.Expr.Literal) {
+                Object literal = ((Ast.Expr.Literal) ast).getLiteral();
+                if (literal != null) {
+                    String value = String.valueOf(literal);
+                    key = literal.getClass().getSimpleName() + value.length() + ":" + value;
+                }
+            } else if (ast instanceof Ast.Expr.Group) {
+                // the same key as its expression, which is the one counted
+                Ast.Expr expression = ((Ast.Expr.Group) ast).getExpression();
+                key = key(expression);
+                if (candidates.containsKey(expression)) {
+                    candidates.put(ast, key);
+                }
+            } else if (ast instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                boolean shortCircuit = binary.getOperator().equals("AND") || binary.getOperator().equals("OR");
+                String left = key(binary.getLeft());
+                conditional += shortCircuit ? 1 : 0;
+                String right = key(binary.getRight());
+                conditional -= shortCircuit ? 1 : 0;
+                if (left != null && right != null && !nils.canFail(binary)) {
+                    key = "(" + left + " " + binary.getOperator() + " " + right + ")";
+                    candidate(binary, key);
+                }
+            } else if (ast instanceof Ast.Expr.Access) {
+                Ast.Expr.Access access = (Ast.Expr.Access) ast;
+                access.getReceiver().ifPresent(this::key);
+                if (!access.getReceiver().isPresent() && isAnalyzed(access) && nils.isNeverNil(access.getVariable())) {
+                    boolean field = fields.contains(access.getVariable());
+                    if (!field || !calls) {
+                        key = access.getName() + "#" + versions.getOrDefault(access.getName(), 0) + (field ? "@" + epoch : "");
+                    }
+                }
+            } else if (ast instanceof Ast.Expr.Function) {
+                Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                function.getReceiver().ifPresent(this::key);
+                function.getArguments().forEach(this::key);
+            }
+            return key;
+        }
+
+        private void candidate(Ast.Expr.Binary ast, String key) {
+            if (conditional == 0 && typeOf(ast) != null) {
+                candidates.put(ast, key);
+                counts.merge(key, 1, Integer::sum);
+                sizes.put(key, key.length());
+                firsts.putIfAbsent(key, ast);
+                statements.putIfAbsent(key, current);
+            }
+        }
+
+    }
+
+    /**
+     * Rebuilds the statements of a block with the candidates numbered
+     * {@code key} replaced by the temporary.
+     */
+    private static final class Replacement {
+
+        private final Map<Ast.Expr, String> candidates;
+        private final String key;
+        private final Ast.Stmt.Declaration temporary;
+
+        private Replacement(Map<Ast.Expr, String> candidates, String key, Ast.Stmt.Declaration temporary) {
+            this.candidates = candidates;
+            this.key = key;
+            this.temporary = temporary;
+        }
+
+        private Ast.Stmt statement(Ast.Stmt statement) {
+            if (statement instanceof Ast.Stmt.Expression) {
+                return new Ast.Stmt.Expression(expr(((Ast.Stmt.Expression) statement).getExpression()));
+            } else if (statement instanceof Ast.Stmt.Declaration) {
+                Ast.Stmt.Declaration ast = (Ast.Stmt.Declaration) statement;
+                Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+                copy(() -> ast.getVariable(), declaration::setVariable);
+                return declaration;
+            } else if (statement instanceof Ast.Stmt.Assignment) {
+                Ast.Stmt.Assignment ast = (Ast.Stmt.Assignment) statement;
+                return new Ast.Stmt.Assignment(expr(ast.getReceiver()), expr(ast.getValue()));
+            }
+            return new Ast.Stmt.Return(expr(((Ast.Stmt.Return) statement).getValue()));
+        }
+
+        private Ast.Expr expr(Ast.Expr ast) {
+            if (key.equals(candidates.get(ast))) {
+                Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), temporary.getName());
+                access.setVariable(temporary.getVariable());
+                return access;
+            } else if (ast instanceof Ast.Expr.Group) {
+                Ast.Expr.Group group = new Ast.Expr.Group(expr(((Ast.Expr.Group) ast).getExpression()));
+                copy(() -> ast.getType(), group::setType);
+                return group;
+            } else if (ast instanceof Ast.Expr.Binary) {
+                Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+                Ast.Expr.Binary copy = new Ast.Expr.Binary(binary.getOperator(), expr(binary.getLeft()), expr(binary.getRight()));
+                copy(() -> ast.getType(), copy::setType);
+                return copy;
+            } else if (ast instanceof Ast.Expr.Access && ((Ast.Expr.Access) ast).getReceiver().isPresent()) {
+                Ast.Expr.Access access = (Ast.Expr.Access) ast;
+                Ast.Expr.Access copy = new Ast.Expr.Access(access.getReceiver().map(this::expr), access.getName());
+                copy(() -> access.getVariable(), copy::setVariable);
+                return copy;
+            } else if (ast instanceof Ast.Expr.Function) {
+                Ast.Expr.Function function = (Ast.Expr.Function) ast;
+                List<Ast.Expr> arguments = new ArrayList<>();
+                function.getArguments().forEach(argument -> arguments.add(expr(argument)));
+                Ast.Expr.Function copy = new Ast.Expr.Function(function.getReceiver().map(this::expr), function.getName(), arguments);
+                copy(() -> function.getFunction(), copy::setFunction);
+                return copy;
+            }
+            return ast;
+        }
+
+    }
+
+    /**
+     * Returns whether {@code ast} calls anything other than {@code range},
+     * which can't assign a field.
+     */
+    private static boolean calls(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Group) {
+            return calls(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            return calls(((Ast.Expr.Binary) ast).getLeft()) || calls(((Ast.Expr.Binary) ast).getRight());
+        } else if (ast instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) ast).getReceiver().map(CommonSubexpressionEliminator::calls).orElse(false);
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            String name = function.getName() + "/" + function.getArguments().size();
+            return function.getReceiver().isPresent() || !name.equals("range/2") && !name.equals("range/3")
+                    || function.getArguments().stream().anyMatch(CommonSubexpressionEliminator::calls);
+        }
+        return false;
+    }
+
+    private static boolean isAnalyzed(Ast.Expr.Access ast) {
+        try {
+            ast.getVariable();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    private static Environment.Type typeOf(Ast.Expr expr) {
+        try {
+            return expr.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static <T> void copy(Supplier<T> getter, Consumer<T> setter) {
+        try {
+            setter.accept(getter.get());
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+    }
+
+}
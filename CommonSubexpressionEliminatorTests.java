@@ -0,0 +1,109 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class CommonSubexpressionEliminatorTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = run(source, UnaryOperator.identity());
+        Assertions.assertEquals(expected, run(source, ast -> new CommonSubexpressionEliminator().visit(ast)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Repeat", "DEF main(): Integer DO LET a = 3; LET b = 4; RETURN (a * b) + (a * b); END"),
+                Arguments.of("Across Statements", "DEF main(): Integer DO LET a = 3; LET b = 4; print(a * b + 1); print(a * b + 1); RETURN 0; END"),
+                Arguments.of("Reassigned", "DEF main(): Integer DO LET a = 3; print(a * 2); a = a + 1; print(a * 2); RETURN 0; END"),
+                Arguments.of("Nested Blocks", "DEF main(): Integer DO LET a = 3; IF a > 2 DO print((a * a) + (a * a)); ELSE print(a * a); END RETURN a * a; END"),
+                Arguments.of("Strings", "DEF main(): Integer DO LET s = \"x\"; print((s + 1) + (s + 1)); RETURN 0; END"),
+                Arguments.of("Division", "DEF main(): Integer DO LET a = 0; print(a == 0 OR (1 / a) + (1 / a) > 0); RETURN 0; END"),
+                Arguments.of("Nil And", "LET y: Integer; DEF main(): Integer DO LET ok: Boolean = y != NIL AND (y * 2) + (y * 2) > 0; print(ok); RETURN 0; END"),
+                Arguments.of("Nil Or", "LET y: Integer; DEF main(): Integer DO print(y == NIL OR (y * 2) + (y * 2) > 0); RETURN 0; END"),
+                Arguments.of("Nil After Call", "LET y: Integer; DEF main(): Integer DO print(1); print((y * 2) + (y * 2)); RETURN 0; END"),
+                Arguments.of("Nil Local In Or", "DEF main(): Integer DO LET a = 3; LET y: Integer; print(a > 2 OR (a * 2) + (a * 2) + (y * 2) > 0); RETURN 0; END"),
+                Arguments.of("Nil Parameter", "LET z: Integer; DEF f(y: Integer): Boolean DO RETURN y == NIL OR (y * 2) + (y * 2) > 0; END DEF main(): Integer DO print(f(z)); RETURN 0; END"),
+                Arguments.of("Mixed Comparison After Call", "DEF p(): Boolean DO print(9); RETURN TRUE; END DEF main(): Integer DO LET a = 1; LET s = \"x\"; LET v = p() == ((a < s) == (a < s)); RETURN 0; END"),
+                Arguments.of("Same Type Comparison After Call", "DEF p(): Boolean DO print(9); RETURN TRUE; END DEF main(): Integer DO LET a = 1; LET b = 2; LET v = p() == ((a < b) == (a < b)); print(v); RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testSharesRepeat() {
+        Ast.Method main = eliminate("DEF main(): Integer DO LET a = 3; LET b = 4; RETURN (a * b) + (a * b); END");
+        Assertions.assertEquals(List.of("a", "b", "$cse0"), declarations(main));
+    }
+
+    @Test
+    void testSharesLargestRepeat() {
+        Ast.Method main = eliminate("DEF main(): Integer DO LET a = 3; LET b = 4; RETURN (a * b + 1) * (a * b + 1); END");
+        Assertions.assertEquals(List.of("a", "b", "$cse0"), declarations(main));
+    }
+
+    @Test
+    void testKeepsMixedComparison() {
+        Ast.Method main = eliminate("DEF main(): Integer DO LET a = 1; LET s = \"x\"; print((a < s) == (a < s)); RETURN 0; END");
+        Assertions.assertEquals(List.of("a", "s"), declarations(main));
+    }
+
+    @Test
+    void testKeepsShortCircuitedRepeat() {
+        Ast.Method main = eliminate("DEF main(): Integer DO LET a = 3; print(a > 5 AND (a * 2) + (a * 2) > 0); RETURN 0; END");
+        Assertions.assertEquals(List.of("a"), declarations(main));
+    }
+
+    @Test
+    void testKeepsNilRepeat() {
+        Ast.Method main = eliminate("LET y: Integer; DEF main(): Integer DO RETURN (y * 2) + (y * 2); END");
+        Assertions.assertEquals(List.of(), declarations(main));
+    }
+
+    /**
+     * Returns the names declared directly in the body of {@code method}.
+     */
+    private static List<String> declarations(Ast.Method method) {
+        return method.getStatements().stream()
+                .filter(statement -> statement instanceof Ast.Stmt.Declaration)
+                .map(statement -> ((Ast.Stmt.Declaration) statement).getName())
+                .collect(Collectors.toList());
+    }
+
+    private static Ast.Method eliminate(String source) {
+        Ast.Source ast = new CommonSubexpressionEliminator().visit(analyze(source));
+        return ast.getMethods().get(ast.getMethods().size() - 1);
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} after {@code pass}, returning what it printed and
+     * its result or error.
+     */
+    private static String run(String source, UnaryOperator<Ast.Source> pass) {
+        Ast.Source ast = pass.apply(analyze(source));
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the parts of an {@link Ast.Source} that can't affect a run: methods
+ * that aren't reachable from {@code main} through calls, and fields that
+ * nothing reachable reads and whose initializer has no effect. The remaining
+ * nodes are shared with the input, which isn't modified.
+ * <p>
+ * Reachability follows calls by name and arity, and a field counts as read
+ * wherever a variable of its name is accessed (even if a local shadows it),
+ * so the analysis only ever keeps too much. Initializers that call anything or
+ * apply an operator the {@link NilAnalyzer} finds can fail are always kept,
+ * along with their fields.
+ */
+public final class DeadCodeEliminator {
+
+    public Ast.Source eliminate(Ast.Source ast) {
+        Map<String, Ast.Method> methods = new HashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            methods.put(method.getName() + "/" + method.getParameters().size(), method);
+        }
+        if (!methods.containsKey("main/0")) {
+            return ast;
+        }
+
+        NilAnalyzer nils = new NilAnalyzer();
+        nils.visit(ast);
+        Uses uses = new Uses();
+        Deque<String> pending = new ArrayDeque<>();
+        Set<String> reached = new HashSet<>();
+        pending.add("main/0");
+        for (Ast.Field field : ast.getFields()) {
+            if (field.getValue().isPresent() && hasEffect(field.getValue().get(), nils)) {
+                uses.visit(field.getValue().get());
+                uses.fields.add(field.getName());
+            }
+        }
+        pending.addAll(uses.calls);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            if (methods.containsKey(name) && reached.add(name)) {
+                uses.calls.clear();
+                uses.visit(methods.get(name));
+                pending.addAll(uses.calls);
+            }
+        }
+        // fields only read by other fields' initializers are live too
+        Set<String> live = new HashSet<>(uses.fields);
+        for (int i = ast.getFields().size() - 1; i >= 0; i--) {
+            Ast.Field field = ast.getFields().get(i);
+            if (live.contains(field.getName()) && field.getValue().isPresent()) {
+                uses.fields.clear();
+                uses.visit(field.getValue().get());
+                live.addAll(uses.fields);
+            }
+        }
+
+        List<Ast.Field> fields = new ArrayList<>();
+        for (Ast.Field field : ast.getFields()) {
+            if (live.contains(field.getName())) {
+                fields.add(field);
+            }
+        }
+        List<Ast.Method> kept = new ArrayList<>();
+        for (Ast.Method method : ast.getMethods()) {
+            if (reached.contains(method.getName() + "/" + method.getParameters().size())) {
+                kept.add(method);
+            }
+        }
+        return new Ast.Source(fields, kept);
+    }
+
+    /**
+     * Returns whether evaluating {@code expr} could do anything but produce a
+     * value: call a function, go through a receiver or apply an operator
+     * {@code nils} finds can fail.
+     */
+    private static boolean hasEffect(Ast.Expr expr, NilAnalyzer nils) {
+        if (expr instanceof Ast.Expr.Literal || expr instanceof Ast.Expr.Access && !((Ast.Expr.Access) expr).getReceiver().isPresent()) {
+            return false;
+        } else if (expr instanceof Ast.Expr.Group) {
+            return hasEffect(((Ast.Expr.Group) expr).getExpression(), nils);
+        } else if (expr instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) expr;
+            return nils.canFail(binary) || hasEffect(binary.getLeft(), nils) || hasEffect(binary.getRight(), nils);
+        }
+        return true;
+    }
+
+    /**
+     * Collects the methods called and the variables read by the nodes it
+     * visits.
+     */
+    private static final class Uses implements Ast.Visitor<Void> {
+
+        private final Set<String> calls = new HashSet<>();
+        private final Set<String> fields = new HashSet<>();
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            visit(ast.getCondition());
+            ast.getThenStatements().forEach(this::visit);
+            ast.getElseStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            visit(ast.getValue());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            visit(ast.getCondition());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                visit(ast.getReceiver().get());
+            } else {
+                fields.add(ast.getName());
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            ast.getReceiver().ifPresent(this::visit);
+            if (!ast.getReceiver().isPresent()) {
+                calls.add(ast.getName() + "/" + ast.getArguments().size());
+            }
+            ast.getArguments().forEach(this::visit);
+            return null;
+        }
+
+    }
+
+}
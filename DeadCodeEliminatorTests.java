@@ -0,0 +1,103 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DeadCodeEliminatorTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = run(source, UnaryOperator.identity());
+        Assertions.assertEquals(expected, run(source, ast -> new DeadCodeEliminator().eliminate(ast)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Unused Method", "DEF unused(): Integer DO print(1); RETURN 1; END DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Called Method", "DEF helper(x: Integer): Integer DO print(x); RETURN x; END DEF main(): Integer DO RETURN helper(2); END"),
+                Arguments.of("Field Division", "LET x: Integer = 1 / 0; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Nil Field Arithmetic", "LET y: Integer; LET z: Integer = y * 2; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Nil Field Comparison", "LET y: Integer; LET b: Boolean = y < 2; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Mixed Field Comparison", "LET b: Boolean = 1 < \"a\"; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Mixed Field Comparison Through Field", "LET a: Integer = 1; LET b: Boolean = a < 1.5; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Nil Field Equality", "LET y: Integer; LET b: Boolean = y == 2; DEF main(): Integer DO RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testRemovesUnreachableMethods() {
+        Ast.Source ast = eliminate("DEF b(): Integer DO RETURN 1; END DEF a(): Integer DO RETURN b(); END DEF c(): Integer DO RETURN a(); END DEF main(): Integer DO RETURN a(); END");
+        Assertions.assertEquals(List.of("b", "a", "main"), ast.getMethods().stream().map(Ast.Method::getName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testRemovesPureFields() {
+        Ast.Source ast = eliminate("LET x: Integer = 1 + 2; LET y: Integer = 3; LET z: Boolean = x == 3; DEF main(): Integer DO RETURN y; END");
+        Assertions.assertEquals(List.of("y"), names(ast));
+    }
+
+    @Test
+    void testKeepsFieldsReadByKeptFields() {
+        Ast.Source ast = eliminate("LET x: Integer = 2; LET y: Integer = x; LET z: Integer = y; DEF main(): Integer DO RETURN z; END");
+        Assertions.assertEquals(List.of("x", "y", "z"), names(ast));
+    }
+
+    @Test
+    void testKeepsFailingFields() {
+        Ast.Source ast = eliminate("LET y: Integer; LET z: Integer = y * 2; DEF main(): Integer DO RETURN 0; END");
+        Assertions.assertEquals(List.of("y", "z"), names(ast));
+    }
+
+    @Test
+    void testKeepsMixedComparisons() {
+        Ast.Source ast = eliminate("LET x: Integer = 1; LET b: Boolean = x < 2; LET c: Boolean = x < \"a\"; DEF main(): Integer DO RETURN 0; END");
+        Assertions.assertEquals(List.of("x", "c"), names(ast));
+    }
+
+    @Test
+    void testNoMain() {
+        Ast.Source ast = new Parser(new Lexer("DEF f(): Integer DO RETURN 1; END").lex()).parseSource();
+        Assertions.assertSame(ast, new DeadCodeEliminator().eliminate(ast));
+    }
+
+    private static List<String> names(Ast.Source ast) {
+        return ast.getFields().stream().map(Ast.Field::getName).collect(Collectors.toList());
+    }
+
+    private static Ast.Source eliminate(String source) {
+        return new DeadCodeEliminator().eliminate(analyze(source));
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} after {@code pass}, returning what it printed and
+     * its result or error.
+     */
+    private static String run(String source, UnaryOperator<Ast.Source> pass) {
+        Ast.Source ast = pass.apply(analyze(source));
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
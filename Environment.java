@@ -1,4 +1,5 @@
 package plc.project;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -26,8 +27,46 @@ public final class Environment {
         }
         TYPES.put(type.getName(), type);
     }
+    /**
+     * Objects made by {@link #create(Object)} have no fields or methods, so they
+     * all share one frozen empty scope and "Unknown" type instead of allocating
+     * their own. Booleans and small Integers/Characters are canonical instances.
+     */
+    private static final Scope VALUE_SCOPE = Scope.frozen();
+    private static final Type UNKNOWN = new Type("Unknown", "Unknown", VALUE_SCOPE);
+    private static final PlcObject TRUE = new PlcObject(UNKNOWN, VALUE_SCOPE, Boolean.TRUE);
+    private static final PlcObject FALSE = new PlcObject(UNKNOWN, VALUE_SCOPE, Boolean.FALSE);
+    private static final int INTEGER_CACHE_LOW = -128;
+    private static final int INTEGER_CACHE_HIGH = 1024;
+    private static final PlcObject[] INTEGERS = new PlcObject[INTEGER_CACHE_HIGH - INTEGER_CACHE_LOW];
+    private static final PlcObject[] CHARACTERS = new PlcObject[128];
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+            long integer = ((BigInteger) value).longValue();
+            if (integer >= INTEGER_CACHE_LOW && integer < INTEGER_CACHE_HIGH) {
+                return INTEGERS[(int) integer - INTEGER_CACHE_LOW];
+            }
+            return new PlcObject(VALUE_SCOPE, integer, value);
+        } else if (value instanceof Character && (Character) value < CHARACTERS.length) {
+            return CHARACTERS[(Character) value];
+        }
+        return new PlcObject(UNKNOWN, VALUE_SCOPE, value);
+    }
+    public static PlcObject create(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+    /**
+     * Creates an Integer object holding {@code value} as a primitive. The
+     * {@link BigInteger} form is only allocated if something asks
+     * for {@link PlcObject#getValue()}.
+     */
+    public static PlcObject createInteger(long value) {
+        if (value >= INTEGER_CACHE_LOW && value < INTEGER_CACHE_HIGH) {
+            return INTEGERS[(int) value - INTEGER_CACHE_LOW];
+        }
+        return new PlcObject(VALUE_SCOPE, value, null);
     }
     public static final class Type {
         public static final Type ANY = new Type("Any", "Object", new Scope(null));
@@ -83,6 +122,11 @@ public final class Environment {
         private final Type type;
         private final Scope scope;
         private final Object value;
+        // integers that fit in a long are tagged and kept unboxed in this field,
+        // the BigInteger is created on demand (racing on it is harmless)
+        private final boolean small;
+        private final long integer;
+        private BigInteger boxed;
         public PlcObject(Scope scope, Object value) {
             this(new Type("Unknown", "Unknown", scope), scope, value);
         }
@@ -90,6 +134,15 @@ public final class Environment {
             this.type = type;
             this.scope = scope;
             this.value = value;
+            this.small = false;
+            this.integer = 0;
+        }
+        private PlcObject(Scope scope, long integer, Object value) {
+            this.type = UNKNOWN;
+            this.scope = scope;
+            this.value = value;
+            this.small = true;
+            this.integer = integer;
         }
         public Type getType() {
             return type;
@@ -107,13 +160,27 @@ public final class Environment {
             return function.invoke(arguments);
         }
         public Object getValue() {
-            return value;
+            if (value != null || !small) {
+                return value;
+            }
+            BigInteger boxed = this.boxed;
+            if (boxed == null) {
+                boxed = BigInteger.valueOf(integer);
+                this.boxed = boxed;
+            }
+            return boxed;
+        }
+        public boolean isSmallInteger() {
+            return small;
+        }
+        public long getLong() {
+            return integer;
         }
         @Override
         public String toString() {
             return "Object{" +
                     "type=" + type +
-                    ", value=" + value +
+                    ", value=" + getValue() +
                     ", scope=" + scope +
                     '}';
         }
@@ -223,6 +290,13 @@ public final class Environment {
         }
     }
     static {
+        for (int i = 0; i < INTEGERS.length; i++) {
+            long integer = INTEGER_CACHE_LOW + i;
+            INTEGERS[i] = new PlcObject(VALUE_SCOPE, integer, BigInteger.valueOf(integer));
+        }
+        for (char c = 0; c < CHARACTERS.length; c++) {
+            CHARACTERS[c] = new PlcObject(UNKNOWN, VALUE_SCOPE, c);
+        }
         registerType(Type.ANY);
         registerType(Type.NIL);
         registerType(Type.INTEGER_ITERABLE);
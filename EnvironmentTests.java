@@ -0,0 +1,43 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+
+public class EnvironmentTests {
+
+    @Test
+    void testCanonicalBooleans() {
+        Assertions.assertSame(Environment.create(true), Environment.create(Boolean.TRUE));
+        Assertions.assertSame(Environment.create(false), Environment.create(Boolean.FALSE));
+    }
+
+    @Test
+    void testCanonicalIntegers() {
+        Assertions.assertSame(Environment.create(BigInteger.valueOf(5)), Environment.create(BigInteger.valueOf(5)));
+        Assertions.assertSame(Environment.create(BigInteger.valueOf(-128)), Environment.createInteger(-128));
+        Assertions.assertNotSame(Environment.create(BigInteger.valueOf(5000)), Environment.create(BigInteger.valueOf(5000)));
+    }
+
+    @Test
+    void testCanonicalCharacters() {
+        Assertions.assertSame(Environment.create('a'), Environment.create('a'));
+    }
+
+    @Test
+    void testValueScopeFrozen() {
+        Scope scope = Environment.create(BigInteger.ONE).getType().getScope();
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineVariable("x", Environment.NIL));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineFunction("f", 0, args -> Environment.NIL));
+        Assertions.assertThrows(RuntimeException.class, () -> Environment.create("other").getField("x"));
+    }
+
+    @Test
+    void testFrozenScopesIndependent() {
+        Scope scope = new Scope(Scope.frozen());
+        scope.defineVariable("x", Environment.NIL);
+        Assertions.assertSame(Environment.NIL, scope.lookupVariable("x").getValue());
+    }
+
+}
@@ -0,0 +1,182 @@
+package plc.project;
+
+/**
+ * Finds the Integer expressions of an analyzed {@link Ast.Source} whose
+ * intermediate results can't escape, and marks their outermost binary
+ * expression primitive, so the {@link Interpreter} evaluates them on
+ * {@code long}s and only wraps the result in a {@link Environment.PlcObject}.
+ * <p>
+ * An intermediate result escapes if it can reach anything but the operator
+ * using it: a variable, a field, a call or a receiver. So a primitive
+ * expression is built only from Integer arithmetic on Integer literals,
+ * variables and fields, and is either arithmetic itself or compares two
+ * Integers. It also can't have effects, which lets the {@link Interpreter}
+ * evaluate it again with wrappers when a value doesn't fit in a long.
+ * Expressions with a single operator have no intermediate results and are
+ * left alone. Without the types from the {@link Analyzer} nothing is
+ * primitive. {@link Resolver#visit(Ast.Source)} runs it.
+ */
+public final class EscapeAnalyzer implements Ast.Visitor<Void> {
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        ast.getFields().forEach(this::visit);
+        ast.getMethods().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        ast.getValue().ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        ast.getValue().ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        visit(ast.getCondition());
+        ast.getThenStatements().forEach(this::visit);
+        ast.getElseStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        visit(ast.getValue());
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        visit(ast.getCondition());
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        if ((isArithmetic(ast) || isComparison(ast.getOperator()))
+                && (isArithmetic(unwrap(ast.getLeft())) || isArithmetic(unwrap(ast.getRight())))
+                && isPrimitive(ast.getLeft()) && isPrimitive(ast.getRight())) {
+            ast.setPrimitive(true);
+            prepare(ast);
+        } else {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        ast.getReceiver().ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        ast.getReceiver().ifPresent(this::visit);
+        ast.getArguments().forEach(this::visit);
+        return null;
+    }
+
+    /**
+     * Returns whether {@code ast} can be evaluated on longs without effects.
+     */
+    private static boolean isPrimitive(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Group) {
+            return isPrimitive(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            return isArithmetic(binary) && isPrimitive(binary.getLeft()) && isPrimitive(binary.getRight());
+        } else if (ast instanceof Ast.Expr.Access) {
+            return !((Ast.Expr.Access) ast).getReceiver().isPresent() && isInteger(ast);
+        }
+        return ast instanceof Ast.Expr.Literal && isInteger(ast);
+    }
+
+    /**
+     * Chooses the operators of the primitive expression {@code ast} up front,
+     * which the {@link Interpreter} would otherwise do on first evaluation.
+     */
+    private static void prepare(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Group) {
+            prepare(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            binary.setEvaluator(TypedOperator.of(binary));
+            prepare(binary.getLeft());
+            prepare(binary.getRight());
+        }
+    }
+
+    private static Ast.Expr unwrap(Ast.Expr ast) {
+        while (ast instanceof Ast.Expr.Group) {
+            ast = ((Ast.Expr.Group) ast).getExpression();
+        }
+        return ast;
+    }
+
+    private static boolean isArithmetic(Ast.Expr ast) {
+        if (!(ast instanceof Ast.Expr.Binary)) {
+            return false;
+        }
+        String operator = ((Ast.Expr.Binary) ast).getOperator();
+        return (operator.equals("+") || operator.equals("-") || operator.equals("*") || operator.equals("/")) && isInteger(ast);
+    }
+
+    private static boolean isComparison(String operator) {
+        return operator.equals("<") || operator.equals("<=") || operator.equals(">") || operator.equals(">=") || operator.equals("==") || operator.equals("!=");
+    }
+
+    private static boolean isInteger(Ast.Expr ast) {
+        try {
+            return ast.getType() == Environment.Type.INTEGER;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,42 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+public class EscapeAnalyzerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testPrimitive(String test, String expression, boolean expected) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer("LET k: Integer = 2; LET s: String = \"s\"; DEF f(n: Integer): Integer DO RETURN n; END DEF main(): Integer DO LET x = 1; LET d = 1.5; print(" + expression + "); RETURN 0; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new EscapeAnalyzer().visit(ast);
+        Ast.Expr value = ((Ast.Stmt.Expression) ast.getMethods().get(1).getStatements().get(2)).getExpression();
+        Ast.Expr.Binary binary = (Ast.Expr.Binary) ((Ast.Expr.Function) value).getArguments().get(0);
+        Assertions.assertEquals(expected, binary.isPrimitive());
+        if (expected) {
+            Assertions.assertEquals(TypedOperator.of(binary), binary.getEvaluator());
+        }
+    }
+
+    private static Stream<Arguments> testPrimitive() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "(x * 2) + 1", true),
+                Arguments.of("Nested", "((x * x) - (k / 2)) * x", true),
+                Arguments.of("Comparison", "(x + 1) < k", true),
+                Arguments.of("Equality", "x == (k - 1)", true),
+                Arguments.of("Single Operator", "x + 1", false),
+                Arguments.of("Single Comparison", "x < 1", false),
+                Arguments.of("Call", "(x * 2) + f(x)", false),
+                Arguments.of("Decimal", "(d * 1.5) + d", false),
+                Arguments.of("Concatenation", "s + (x * 2)", false),
+                Arguments.of("Logical", "(x < 1) AND (x > 0)", false)
+        );
+    }
+
+}
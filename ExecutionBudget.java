@@ -0,0 +1,123 @@
+package plc.project;
+
+import java.time.Duration;
+
+/**
+ * Limits how long a single run of the {@link Interpreter} may take. The
+ * interpreter calls {@link #tick()} on every loop iteration and method call;
+ * each tick uses one unit of fuel, and every {@link #CHECK_INTERVAL} ticks
+ * the wall-clock deadline, {@link #cancel()} and thread interruption are
+ * checked as well. Exceeding any of them throws {@link Exceeded} out of the
+ * run.
+ * <p>
+ * A budget belongs to one thread. Parallel loops give each worker a
+ * {@link #split()} budget instead, which draws fuel from its parent in
+ * batches and stops when the parent is cancelled.
+ */
+public final class ExecutionBudget {
+
+    public static final int CHECK_INTERVAL = 1024;
+
+    private final ExecutionBudget parent;
+    private final long deadline;
+    private long fuel;
+    private int countdown = CHECK_INTERVAL;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Creates a budget of {@code fuel} ticks that expires {@code timeout} from
+     * now. Use {@link Long#MAX_VALUE} and {@code null} for no limit.
+     */
+    public ExecutionBudget(long fuel, Duration timeout) {
+        this.parent = null;
+        this.fuel = fuel;
+        this.deadline = timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+    }
+
+    private ExecutionBudget(ExecutionBudget parent) {
+        this.parent = parent;
+        this.fuel = 0;
+        this.deadline = parent.deadline;
+    }
+
+    public static ExecutionBudget unlimited() {
+        return new ExecutionBudget(Long.MAX_VALUE, null);
+    }
+
+    public void tick() {
+        if (--fuel < 0 && !refill()) {
+            throw new Exceeded("Execution budget exhausted.");
+        }
+        if (--countdown == 0) {
+            countdown = CHECK_INTERVAL;
+            check();
+        }
+    }
+
+    /**
+     * Stops the run at its next check. Safe to call from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public long getRemainingFuel() {
+        return fuel;
+    }
+
+    /**
+     * Creates a budget for a worker thread that shares this one's fuel,
+     * deadline and cancellation. This budget must not be ticked itself until
+     * the workers have {@link #release()}d theirs.
+     */
+    public ExecutionBudget split() {
+        return new ExecutionBudget(this);
+    }
+
+    /**
+     * Returns the unused fuel of a {@link #split()} budget to its parent.
+     */
+    public void release() {
+        if (parent != null && fuel > 0) {
+            parent.give(fuel);
+            fuel = 0;
+        }
+    }
+
+    private boolean refill() {
+        if (parent == null) {
+            return false;
+        }
+        fuel = parent.take(CHECK_INTERVAL) - 1;
+        return fuel >= 0;
+    }
+
+    private synchronized long take(long amount) {
+        long taken = Math.max(0, Math.min(amount, fuel));
+        fuel -= taken;
+        return taken;
+    }
+
+    private synchronized void give(long amount) {
+        fuel += amount;
+    }
+
+    private void check() {
+        if (cancelled || parent != null && parent.cancelled || Thread.currentThread().isInterrupted()) {
+            throw new Exceeded("Execution cancelled.");
+        } else if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0) {
+            throw new Exceeded("Execution deadline exceeded.");
+        }
+    }
+
+    public static final class Exceeded extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public Exceeded(String message) {
+            super(message);
+        }
+
+    }
+
+}
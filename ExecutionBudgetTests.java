@@ -0,0 +1,89 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.time.Duration;
+
+public class ExecutionBudgetTests {
+
+    @Test
+    void testFuel() {
+        ExecutionBudget budget = new ExecutionBudget(10, null);
+        for (int i = 0; i < 10; i++) {
+            budget.tick();
+        }
+        Assertions.assertEquals(0, budget.getRemainingFuel());
+        ExecutionBudget.Exceeded exceeded = Assertions.assertThrows(ExecutionBudget.Exceeded.class, budget::tick);
+        Assertions.assertEquals("Execution budget exhausted.", exceeded.getMessage());
+    }
+
+    @Test
+    void testDeadline() throws InterruptedException {
+        ExecutionBudget budget = new ExecutionBudget(Long.MAX_VALUE, Duration.ofMillis(1));
+        Thread.sleep(10);
+        ExecutionBudget.Exceeded exceeded = Assertions.assertThrows(ExecutionBudget.Exceeded.class, () -> tick(budget, ExecutionBudget.CHECK_INTERVAL));
+        Assertions.assertEquals("Execution deadline exceeded.", exceeded.getMessage());
+    }
+
+    @Test
+    void testCancel() {
+        ExecutionBudget budget = ExecutionBudget.unlimited();
+        tick(budget, ExecutionBudget.CHECK_INTERVAL);
+        budget.cancel();
+        ExecutionBudget.Exceeded exceeded = Assertions.assertThrows(ExecutionBudget.Exceeded.class, () -> tick(budget, ExecutionBudget.CHECK_INTERVAL));
+        Assertions.assertEquals("Execution cancelled.", exceeded.getMessage());
+    }
+
+    @Test
+    void testInterrupt() {
+        ExecutionBudget budget = ExecutionBudget.unlimited();
+        Thread.currentThread().interrupt();
+        try {
+            Assertions.assertThrows(ExecutionBudget.Exceeded.class, () -> tick(budget, ExecutionBudget.CHECK_INTERVAL));
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    void testSplitSharesFuel() {
+        ExecutionBudget budget = new ExecutionBudget(3000, null);
+        ExecutionBudget first = budget.split();
+        tick(first, 1500);
+        first.release();
+        ExecutionBudget second = budget.split();
+        tick(second, 1000);
+        second.release();
+        Assertions.assertEquals(500, budget.getRemainingFuel());
+        ExecutionBudget third = budget.split();
+        tick(third, 500);
+        Assertions.assertThrows(ExecutionBudget.Exceeded.class, third::tick);
+    }
+
+    @Test
+    void testSplitCancelled() {
+        ExecutionBudget budget = ExecutionBudget.unlimited();
+        ExecutionBudget worker = budget.split();
+        budget.cancel();
+        Assertions.assertThrows(ExecutionBudget.Exceeded.class, () -> tick(worker, ExecutionBudget.CHECK_INTERVAL));
+    }
+
+    @Test
+    void testInterpreterLoop() {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer("DEF main(): Integer DO LET i = 0; WHILE TRUE DO i = i + 1; END RETURN i; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(new StringWriter()));
+        interpreter.setBudget(new ExecutionBudget(10000, null));
+        Assertions.assertThrows(ExecutionBudget.Exceeded.class, () -> interpreter.visit(ast));
+    }
+
+    private static void tick(ExecutionBudget budget, int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            budget.tick();
+        }
+    }
+
+}
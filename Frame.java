@@ -0,0 +1,42 @@
+package plc.project;
+
+/**
+ * Runtime storage for the local variables of a method or block. Variables are
+ * addressed by the (depth, slot) pairs assigned by the {@link Resolver}, so a
+ * read is a walk of {@code depth} parents followed by an array index.
+ */
+public final class Frame {
+
+    private final Frame parent;
+    private final Environment.PlcObject[] slots;
+
+    public Frame(Frame parent, int size) {
+        this.parent = parent;
+        this.slots = new Environment.PlcObject[size];
+    }
+
+    public Frame getParent() {
+        return parent;
+    }
+
+    public Environment.PlcObject get(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    public void set(int depth, int slot, Environment.PlcObject value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    public void define(int slot, Environment.PlcObject value) {
+        slots[slot] = value;
+    }
+
+    public Frame ancestor(int depth) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.parent;
+        }
+        return frame;
+    }
+
+}
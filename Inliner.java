@@ -0,0 +1,370 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Replaces calls to small methods in an analyzed {@link Ast.Source} by their
+ * bodies, returning a new AST (the input isn't modified). A method can be
+ * inlined if its body is a single {@code RETURN} of an expression with at
+ * most {@code budget} nodes that doesn't call the method itself. Methods are
+ * handled in order, so calls inside a method are inlined before the method
+ * is, and the {@link Optimizer} can then fold what the arguments made
+ * constant.
+ * <p>
+ * A call is only replaced when that can't change what happens: the argument
+ * and parameter types must match exactly, the fields the body reads can't be
+ * shadowed by a local of the caller, and since the arguments are no longer
+ * evaluated up front, each one has to be a literal, a variable or (if its
+ * parameter is used at most once) an expression that can't fail: one without
+ * calls whose operators the {@link NilAnalyzer} finds can't fail (so no
+ * divisions, mixed type comparisons or operators on variables that may be
+ * NIL other than {@code ==}/{@code !=}). Anything but a
+ * literal also requires a body without calls, which could assign what the
+ * argument reads. The inlined methods themselves are kept;
+ * the {@link DeadCodeEliminator} drops the ones nothing calls anymore.
+ */
+public final class Inliner implements Ast.Visitor<Ast> {
+
+    public static final int DEFAULT_BUDGET = 12;
+
+    private final int budget;
+    private final Map<String, Ast.Method> inlinable = new HashMap<>();
+    private final Set<String> locals = new HashSet<>();
+    private final NilAnalyzer nils = new NilAnalyzer();
+
+    public Inliner() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public Inliner(int budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        nils.visit(ast);
+        List<Ast.Field> fields = new ArrayList<>();
+        ast.getFields().forEach(field -> fields.add(visit(field)));
+        List<Ast.Method> methods = new ArrayList<>();
+        ast.getMethods().forEach(method -> methods.add(visit(method)));
+        return new Ast.Source(fields, methods);
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        Ast.Field field = new Ast.Field(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+        copy(() -> ast.getVariable(), field::setVariable);
+        return field;
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        locals.clear();
+        locals.addAll(ast.getParameters());
+        declarations(ast.getStatements());
+        Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements(ast.getStatements()));
+        copy(() -> ast.getFunction(), method::setFunction);
+        String name = ast.getName() + "/" + ast.getParameters().size();
+        if (method.getStatements().size() == 1 && method.getStatements().get(0) instanceof Ast.Stmt.Return) {
+            Ast.Expr body = ((Ast.Stmt.Return) method.getStatements().get(0)).getValue();
+            if (size(body) <= budget && !calls(body, name)) {
+                inlinable.put(name, method);
+            }
+        }
+        return method;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Expression ast) {
+        return new Ast.Stmt.Expression(expr(ast.getExpression()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+        copy(() -> ast.getVariable(), declaration::setVariable);
+        return declaration;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+        return new Ast.Stmt.Assignment(expr(ast.getReceiver()), expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.If ast) {
+        return new Ast.Stmt.If(expr(ast.getCondition()), statements(ast.getThenStatements()), statements(ast.getElseStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        return new Ast.Stmt.For(ast.getName(), expr(ast.getValue()), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.While ast) {
+        return new Ast.Stmt.While(expr(ast.getCondition()), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Return ast) {
+        return new Ast.Stmt.Return(expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Literal ast) {
+        return substitute(ast, new HashMap<>());
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        Ast.Expr.Group group = new Ast.Expr.Group(expr(ast.getExpression()));
+        copy(() -> ast.getType(), group::setType);
+        return group;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        Ast.Expr.Binary binary = new Ast.Expr.Binary(ast.getOperator(), expr(ast.getLeft()), expr(ast.getRight()));
+        copy(() -> ast.getType(), binary::setType);
+        return binary;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        Ast.Expr.Access access = new Ast.Expr.Access(ast.getReceiver().map(this::expr), ast.getName());
+        copy(() -> ast.getVariable(), access::setVariable);
+        return access;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        List<Ast.Expr> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(expr(argument)));
+        Ast.Method method = inlinable.get(ast.getName() + "/" + arguments.size());
+        if (!ast.getReceiver().isPresent() && method != null) {
+            Ast.Expr inlined = inline(method, arguments);
+            if (inlined != null) {
+                return inlined;
+            }
+        }
+        Ast.Expr.Function function = new Ast.Expr.Function(ast.getReceiver().map(this::expr), ast.getName(), arguments);
+        copy(() -> ast.getFunction(), function::setFunction);
+        return function;
+    }
+
+    private Ast.Expr expr(Ast.Expr ast) {
+        return (Ast.Expr) visit(ast);
+    }
+
+    private List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> result = new ArrayList<>();
+        statements.forEach(statement -> result.add((Ast.Stmt) visit(statement)));
+        return result;
+    }
+
+    /**
+     * Collects the names of the locals declared anywhere in a method, which
+     * is more than are in scope at any one call but keeps the check simple.
+     */
+    private void declarations(List<Ast.Stmt> statements) {
+        for (Ast.Stmt statement : statements) {
+            if (statement instanceof Ast.Stmt.Declaration) {
+                locals.add(((Ast.Stmt.Declaration) statement).getName());
+            } else if (statement instanceof Ast.Stmt.If) {
+                declarations(((Ast.Stmt.If) statement).getThenStatements());
+                declarations(((Ast.Stmt.If) statement).getElseStatements());
+            } else if (statement instanceof Ast.Stmt.For) {
+                locals.add(((Ast.Stmt.For) statement).getName());
+                declarations(((Ast.Stmt.For) statement).getStatements());
+            } else if (statement instanceof Ast.Stmt.While) {
+                declarations(((Ast.Stmt.While) statement).getStatements());
+            }
+        }
+    }
+
+    /**
+     * Returns the body of {@code method} with the parameters replaced by
+     * {@code arguments}, or null if the call has to stay.
+     */
+    private Ast.Expr inline(Ast.Method method, List<Ast.Expr> arguments) {
+        Ast.Expr body = ((Ast.Stmt.Return) method.getStatements().get(0)).getValue();
+        Environment.Function function;
+        try {
+            function = method.getFunction();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        if (typeOf(body) == null || typeOf(body) != function.getReturnType()) {
+            return null;
+        }
+        List<String> parameters = method.getParameters();
+        Map<String, Integer> uses = new HashMap<>();
+        Set<String> free = new HashSet<>();
+        reads(body, parameters, uses, free);
+        if (free.stream().anyMatch(locals::contains)) {
+            return null;
+        }
+        boolean calls = calls(body, null);
+        Map<String, Ast.Expr> substitution = new HashMap<>();
+        for (int i = 0; i < parameters.size(); i++) {
+            Ast.Expr argument = arguments.get(i);
+            if (typeOf(argument) != function.getParameterTypes().get(i)) {
+                return null;
+            } else if (!(argument instanceof Ast.Expr.Literal)) {
+                boolean variable = argument instanceof Ast.Expr.Access && !((Ast.Expr.Access) argument).getReceiver().isPresent();
+                if (calls || !variable && (hasEffect(argument) || uses.getOrDefault(parameters.get(i), 0) > 1)) {
+                    return null;
+                }
+            }
+            substitution.put(parameters.get(i), argument instanceof Ast.Expr.Binary ? group(argument) : argument);
+        }
+        Ast.Expr inlined = substitute(body, substitution);
+        return inlined instanceof Ast.Expr.Binary ? group(inlined) : inlined;
+    }
+
+    /**
+     * Copies an expression, replacing the receiver-less accesses named in
+     * {@code substitution} by (copies of) their expressions.
+     */
+    private static Ast.Expr substitute(Ast.Expr ast, Map<String, Ast.Expr> substitution) {
+        if (ast instanceof Ast.Expr.Literal) {
+            Ast.Expr.Literal literal = new Ast.Expr.Literal(((Ast.Expr.Literal) ast).getLiteral());
+            copy(() -> ast.getType(), literal::setType);
+            return literal;
+        } else if (ast instanceof Ast.Expr.Group) {
+            Ast.Expr.Group group = new Ast.Expr.Group(substitute(((Ast.Expr.Group) ast).getExpression(), substitution));
+            copy(() -> ast.getType(), group::setType);
+            return group;
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            Ast.Expr.Binary copy = new Ast.Expr.Binary(binary.getOperator(), substitute(binary.getLeft(), substitution), substitute(binary.getRight(), substitution));
+            copy(() -> ast.getType(), copy::setType);
+            return copy;
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (!access.getReceiver().isPresent() && substitution.containsKey(access.getName())) {
+                return substitute(substitution.get(access.getName()), new HashMap<>());
+            }
+            Ast.Expr.Access copy = new Ast.Expr.Access(access.getReceiver().map(receiver -> substitute(receiver, substitution)), access.getName());
+            copy(() -> access.getVariable(), copy::setVariable);
+            return copy;
+        } else {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            List<Ast.Expr> arguments = new ArrayList<>();
+            function.getArguments().forEach(argument -> arguments.add(substitute(argument, substitution)));
+            Ast.Expr.Function copy = new Ast.Expr.Function(function.getReceiver().map(receiver -> substitute(receiver, substitution)), function.getName(), arguments);
+            copy(() -> function.getFunction(), copy::setFunction);
+            return copy;
+        }
+    }
+
+    /**
+     * Counts how often each parameter is read in {@code ast} and collects the
+     * other receiver-less names it reads, which are fields.
+     */
+    private static void reads(Ast.Expr ast, List<String> parameters, Map<String, Integer> uses, Set<String> free) {
+        if (ast instanceof Ast.Expr.Group) {
+            reads(((Ast.Expr.Group) ast).getExpression(), parameters, uses, free);
+        } else if (ast instanceof Ast.Expr.Binary) {
+            reads(((Ast.Expr.Binary) ast).getLeft(), parameters, uses, free);
+            reads(((Ast.Expr.Binary) ast).getRight(), parameters, uses, free);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (access.getReceiver().isPresent()) {
+                reads(access.getReceiver().get(), parameters, uses, free);
+            } else if (parameters.contains(access.getName())) {
+                uses.merge(access.getName(), 1, Integer::sum);
+            } else {
+                free.add(access.getName());
+            }
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            function.getReceiver().ifPresent(receiver -> reads(receiver, parameters, uses, free));
+            function.getArguments().forEach(argument -> reads(argument, parameters, uses, free));
+        }
+    }
+
+    /**
+     * Returns whether {@code ast} calls {@code name} (a name/arity pair), or
+     * anything at all if it's null.
+     */
+    private static boolean calls(Ast.Expr ast, String name) {
+        if (ast instanceof Ast.Expr.Group) {
+            return calls(((Ast.Expr.Group) ast).getExpression(), name);
+        } else if (ast instanceof Ast.Expr.Binary) {
+            return calls(((Ast.Expr.Binary) ast).getLeft(), name) || calls(((Ast.Expr.Binary) ast).getRight(), name);
+        } else if (ast instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) ast).getReceiver().map(receiver -> calls(receiver, name)).orElse(false);
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            return name == null || name.equals(function.getName() + "/" + function.getArguments().size())
+                    || function.getReceiver().map(receiver -> calls(receiver, name)).orElse(false)
+                    || function.getArguments().stream().anyMatch(argument -> calls(argument, name));
+        }
+        return false;
+    }
+
+    private static int size(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Group) {
+            return 1 + size(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            return 1 + size(((Ast.Expr.Binary) ast).getLeft()) + size(((Ast.Expr.Binary) ast).getRight());
+        } else if (ast instanceof Ast.Expr.Access) {
+            return 1 + ((Ast.Expr.Access) ast).getReceiver().map(Inliner::size).orElse(0);
+        } else if (ast instanceof Ast.Expr.Function) {
+            Ast.Expr.Function function = (Ast.Expr.Function) ast;
+            return 1 + function.getReceiver().map(Inliner::size).orElse(0) + function.getArguments().stream().mapToInt(Inliner::size).sum();
+        }
+        return 1;
+    }
+
+    /**
+     * Returns whether evaluating {@code ast} could do anything but produce a
+     * value: call a function, go through a receiver or apply an operator the
+     * {@link NilAnalyzer} finds can fail.
+     */
+    private boolean hasEffect(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return false;
+        } else if (ast instanceof Ast.Expr.Access) {
+            return ((Ast.Expr.Access) ast).getReceiver().isPresent();
+        } else if (ast instanceof Ast.Expr.Group) {
+            return hasEffect(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            return nils.canFail(binary) || hasEffect(binary.getLeft()) || hasEffect(binary.getRight());
+        }
+        return true;
+    }
+
+    private static Ast.Expr.Group group(Ast.Expr expr) {
+        Ast.Expr.Group group = new Ast.Expr.Group(expr);
+        copy(() -> expr.getType(), group::setType);
+        return group;
+    }
+
+    private static Environment.Type typeOf(Ast.Expr expr) {
+        try {
+            return expr.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static <T> void copy(Supplier<T> getter, Consumer<T> setter) {
+        try {
+            setter.accept(getter.get());
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+    }
+
+}
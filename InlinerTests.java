@@ -0,0 +1,105 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+public class InlinerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = run(source, UnaryOperator.identity());
+        Assertions.assertEquals(expected, run(source, ast -> new Inliner().visit(ast)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Literal Argument", "DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO RETURN square(7); END"),
+                Arguments.of("Variable Argument", "DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO LET x = 3; RETURN square(x); END"),
+                Arguments.of("Expression Argument", "DEF twice(n: Integer): Integer DO RETURN n * 2; END DEF main(): Integer DO LET x = 3; RETURN twice(x + 1); END"),
+                Arguments.of("Nested", "DEF twice(n: Integer): Integer DO RETURN n * 2; END DEF quad(n: Integer): Integer DO RETURN twice(twice(n)); END DEF main(): Integer DO RETURN quad(5); END"),
+                Arguments.of("Field", "LET k: Integer = 4; DEF scale(n: Integer): Integer DO RETURN n * k; END DEF main(): Integer DO print(scale(2)); k = 5; RETURN scale(2); END"),
+                Arguments.of("Shadowed Field", "LET k: Integer = 4; DEF scale(n: Integer): Integer DO RETURN n * k; END DEF main(): Integer DO LET k = 100; RETURN scale(2); END"),
+                Arguments.of("Argument Order", "DEF id(n: Integer): Integer DO print(n); RETURN n; END DEF sub(a: Integer, b: Integer): Integer DO RETURN b - a; END DEF main(): Integer DO RETURN sub(id(1), id(2)); END"),
+                Arguments.of("Recursive", "DEF f(n: Integer): Integer DO RETURN f(n); END DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Division Argument", "DEF twice(n: Integer): Integer DO RETURN n * 2; END DEF main(): Integer DO LET x = 0; RETURN twice(1 / x); END"),
+                Arguments.of("Unused Parameter", "LET y: Integer; DEF zero(n: Integer): Integer DO RETURN 0; END DEF main(): Integer DO RETURN zero(y * 2); END"),
+                Arguments.of("Short-Circuited Parameter", "LET y: Integer; DEF both(a: Boolean, b: Boolean): Boolean DO RETURN a AND b; END DEF main(): Integer DO print(both(1 > 2, y > 2)); RETURN 0; END"),
+                Arguments.of("Mixed Comparison Argument", "DEF k(x: Boolean): Integer DO RETURN 1; END DEF main(): Integer DO LET a = 1; LET s = \"x\"; RETURN k(a < s); END"),
+                Arguments.of("Same Type Comparison Argument", "DEF k(x: Boolean): Integer DO RETURN 1; END DEF main(): Integer DO LET a = 1; LET b = 2; RETURN k(a < b); END"),
+                Arguments.of("Nil Argument Used Twice", "LET y: Integer; DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO RETURN square(y); END")
+        );
+    }
+
+    @Test
+    void testInlines() {
+        Ast.Source ast = new Inliner().visit(analyze("DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO RETURN square(7); END"));
+        Ast.Expr value = ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(0)).getValue();
+        Assertions.assertFalse(value instanceof Ast.Expr.Function);
+    }
+
+    @Test
+    void testInlinesExpressionArgument() {
+        Ast.Source ast = new Inliner().visit(analyze("DEF twice(n: Integer): Integer DO RETURN n * 2; END DEF main(): Integer DO LET x = 3; RETURN twice(x + 1); END"));
+        Ast.Expr value = ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(1)).getValue();
+        Assertions.assertFalse(value instanceof Ast.Expr.Function);
+    }
+
+    @Test
+    void testKeepsNilArgument() {
+        Ast.Source ast = new Inliner().visit(analyze("LET y: Integer; DEF zero(n: Integer): Integer DO RETURN 0; END DEF main(): Integer DO RETURN zero(y * 2); END"));
+        Ast.Expr value = ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(0)).getValue();
+        Assertions.assertTrue(value instanceof Ast.Expr.Function);
+    }
+
+    @Test
+    void testKeepsRecursive() {
+        Ast.Source ast = new Inliner().visit(analyze("DEF f(n: Integer): Integer DO RETURN f(n); END DEF main(): Integer DO RETURN f(1); END"));
+        Ast.Expr value = ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(0)).getValue();
+        Assertions.assertTrue(value instanceof Ast.Expr.Function);
+    }
+
+    @Test
+    void testKeepsTypeMismatch() {
+        Ast.Source ast = new Inliner().visit(analyze("DEF id(n: Comparable): Comparable DO RETURN n; END DEF main(): Integer DO print(id(1)); RETURN 0; END"));
+        Ast.Expr value = ((Ast.Stmt.Expression) ast.getMethods().get(1).getStatements().get(0)).getExpression();
+        Assertions.assertEquals("id", ((Ast.Expr.Function) ((Ast.Expr.Function) value).getArguments().get(0)).getName());
+    }
+
+    @Test
+    void testKeepsLargeBody() {
+        Ast.Source ast = new Inliner(2).visit(analyze("DEF poly(n: Integer): Integer DO RETURN (n * n) + (n * 2) + 1; END DEF main(): Integer DO RETURN poly(7); END"));
+        Ast.Expr value = ((Ast.Stmt.Return) ast.getMethods().get(1).getStatements().get(0)).getValue();
+        Assertions.assertTrue(value instanceof Ast.Expr.Function);
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} after {@code pass}, returning what it printed and
+     * its result or error.
+     */
+    private static String run(String source, UnaryOperator<Ast.Source> pass) {
+        Ast.Source ast = pass.apply(analyze(source));
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
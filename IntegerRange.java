@@ -0,0 +1,130 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The lazy {@code IntegerIterable} returned by the built-in
+ * {@code range(start, end[, step])}: the Integers from {@code start} up to
+ * (or, for a negative step, down to) but excluding {@code end}. Nothing is
+ * materialized, and elements are created as unboxed Integers one at a time.
+ * The {@link Interpreter} recognizes ranges in FOR loops and counts through
+ * them directly instead of going through the iterator.
+ */
+public final class IntegerRange implements Iterable<Environment.PlcObject> {
+
+    private final long start;
+    private final long end;
+    private final long step;
+
+    public IntegerRange(long start, long end, long step) {
+        if (step == 0) {
+            throw new RuntimeException("The step of a range cannot be zero.");
+        }
+        this.start = start;
+        this.end = end;
+        this.step = step;
+    }
+
+    /**
+     * Creates the range for the built-in {@code range} function, whose
+     * arguments must be Integers that fit in a long.
+     */
+    public static IntegerRange of(Environment.PlcObject start, Environment.PlcObject end, Environment.PlcObject step) {
+        return new IntegerRange(toLong(start), toLong(end), toLong(step));
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * Returns the number of elements, or {@link Long#MAX_VALUE} if there are
+     * more than that.
+     */
+    public long size() {
+        if (!includes(start)) {
+            return 0;
+        }
+        BigInteger distance = BigInteger.valueOf(end).subtract(BigInteger.valueOf(start));
+        BigInteger[] steps = distance.divideAndRemainder(BigInteger.valueOf(step));
+        BigInteger size = steps[1].signum() == 0 ? steps[0] : steps[0].add(BigInteger.ONE);
+        return size.bitLength() < Long.SIZE ? size.longValue() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the element at {@code index}, which must be less than
+     * {@link #size()}.
+     */
+    public long get(long index) {
+        return start + index * step;
+    }
+
+    /**
+     * Returns whether {@code value} comes before the end of the range, in the
+     * direction of the step.
+     */
+    public boolean includes(long value) {
+        return step > 0 ? value < end : value > end;
+    }
+
+    /**
+     * Returns whether {@code value} is the last element, i.e. the next step
+     * passes the end (or would overflow a long).
+     */
+    public boolean isLast(long value) {
+        long next = value + step;
+        return ((value ^ next) & (step ^ next)) < 0 || !includes(next);
+    }
+
+    @Override
+    public Iterator<Environment.PlcObject> iterator() {
+        return new Iterator<Environment.PlcObject>() {
+
+            private long current = start;
+            private boolean done = !includes(start);
+
+            @Override
+            public boolean hasNext() {
+                return !done;
+            }
+
+            @Override
+            public Environment.PlcObject next() {
+                if (done) {
+                    throw new NoSuchElementException();
+                }
+                long value = current;
+                done = isLast(value);
+                current = value + step;
+                return Environment.createInteger(value);
+            }
+
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "range(" + start + ", " + end + ", " + step + ")";
+    }
+
+    private static long toLong(Environment.PlcObject object) {
+        if (object.isSmallInteger()) {
+            return object.getLong();
+        } else if (object.getValue() instanceof BigInteger) {
+            throw new RuntimeException("The bounds of a range must fit in a long, received " + object.getValue() + ".");
+        } else {
+            throw new RuntimeException("Expected type " + BigInteger.class.getName() + ", received " + object.getValue().getClass().getName() + ".");
+        }
+    }
+
+}
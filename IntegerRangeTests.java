@@ -0,0 +1,63 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class IntegerRangeTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testElements(String test, long start, long end, long step, List<Long> expected) {
+        IntegerRange range = new IntegerRange(start, end, step);
+        List<Long> elements = new ArrayList<>();
+        for (Environment.PlcObject element : range) {
+            elements.add(element.getLong());
+        }
+        Assertions.assertEquals(expected, elements);
+        Assertions.assertEquals(expected.size(), range.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i), range.get(i));
+        }
+    }
+
+    private static Stream<Arguments> testElements() {
+        return Stream.of(
+                Arguments.of("Ascending", 0, 5, 1, List.of(0L, 1L, 2L, 3L, 4L)),
+                Arguments.of("Step", 1, 10, 3, List.of(1L, 4L, 7L)),
+                Arguments.of("Step Reaching End", 0, 9, 3, List.of(0L, 3L, 6L)),
+                Arguments.of("Descending", 5, 0, -1, List.of(5L, 4L, 3L, 2L, 1L)),
+                Arguments.of("Negative Step", 10, -3, -4, List.of(10L, 6L, 2L, -2L)),
+                Arguments.of("Empty", 3, 3, 1, List.of()),
+                Arguments.of("Wrong Direction", 0, 5, -1, List.of()),
+                Arguments.of("Wrong Direction Negative", 5, 0, 2, List.of()),
+                Arguments.of("Near Max", Long.MAX_VALUE - 2, Long.MAX_VALUE, 5, List.of(Long.MAX_VALUE - 2)),
+                Arguments.of("Near Min", Long.MIN_VALUE + 2, Long.MIN_VALUE, -5, List.of(Long.MIN_VALUE + 2))
+        );
+    }
+
+    @Test
+    void testHugeSize() {
+        Assertions.assertEquals(Long.MAX_VALUE, new IntegerRange(Long.MIN_VALUE, Long.MAX_VALUE, 1).size());
+        Assertions.assertEquals(1L << 62, new IntegerRange(Long.MIN_VALUE, Long.MAX_VALUE, 4).size());
+    }
+
+    @Test
+    void testZeroStep() {
+        Assertions.assertThrows(RuntimeException.class, () -> new IntegerRange(0, 5, 0));
+    }
+
+    @Test
+    void testBoundsTooLarge() {
+        Environment.PlcObject big = Environment.create(BigInteger.ONE.shiftLeft(64));
+        Assertions.assertThrows(RuntimeException.class, () -> IntegerRange.of(Environment.createInteger(0), big, Environment.createInteger(1)));
+    }
+
+}
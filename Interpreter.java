@@ -1,34 +1,168 @@
 package plc.project;
 
+import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.stream.Collectors;
 
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
+    /**
+     * Parallel FOR loops over fewer iterations than this run sequentially.
+     */
+    public static final int PARALLEL_THRESHOLD = 1024;
+
+    // marks a pending tail call in returning, see visit(Ast.Stmt.Return)
+    private static final Environment.PlcObject TAIL_CALL = new Environment.PlcObject(null, null);
+
     private Scope scope = new Scope(null);
+    private Frame frame = null;
+    // set by RETURN and cleared by the method call that consumes it, statement
+    // lists stop executing as soon as it is non-null
+    private Environment.PlcObject returning = null;
+    private final OutputSink output;
+    private ExecutionBudget budget = ExecutionBudget.unlimited();
+    private MemoCache memo = new MemoCache(MemoCache.DEFAULT_CAPACITY);
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    // the DEF methods defined by this interpreter, by the function they were registered as
+    private final Map<Environment.Function, Definition> methods;
+    // in a worker running part of a parallel FOR, the loop's reductions and
+    // what this worker's iterations contributed to them
+    private Map<Ast.Stmt.Assignment, Partial> partials = null;
+    // the function each call site inside a method resolved to, see lookup()
+    private final Map<Ast.Expr.Function, Environment.Function> callSites = new IdentityHashMap<>();
+    private Definition tailCall = null;
+    private boolean typed = true;
+    // set when a primitive expression can't be evaluated on longs, see primitive()
+    private boolean boxed = false;
+    private Frame tailFrame = null;
 
     public Interpreter(Scope parent) {
+        this(parent, OutputSink.standardOutput());
+    }
+
+    public Interpreter(Scope parent, PrintWriter out) {
+        this(parent, new OutputSink(out));
+    }
+
+    /**
+     * Creates an interpreter whose {@code print} writes to {@code output}. Output
+     * is buffered and flushed when a program finishes; anything visiting nodes
+     * directly should call {@link OutputSink#flush()} itself.
+     */
+    public Interpreter(Scope parent, OutputSink output) {
+        this.output = output;
+        this.methods = new IdentityHashMap<>();
         scope = new Scope(parent);
         scope.defineFunction("print", 1, args -> {
-            System.out.println(args.get(0).getValue());
+            output.println(args.get(0).getValue());
             return Environment.NIL;
         });
+        scope.defineFunction("range", 2, args -> Environment.create(IntegerRange.of(args.get(0), args.get(1), Environment.createInteger(1))));
+        scope.defineFunction("range", 3, args -> Environment.create(IntegerRange.of(args.get(0), args.get(1), args.get(2))));
+    }
+
+    /**
+     * Creates a worker for a parallel FOR loop of {@code parent}. It shares the
+     * parent's definitions and (split) budget, but has its own frames and
+     * memoized results. Workers never print, since parallel loops don't.
+     */
+    private Interpreter(Interpreter parent) {
+        this.output = parent.output;
+        this.methods = parent.methods;
+        this.scope = parent.scope;
+        this.budget = parent.budget.split();
+        this.memo = new MemoCache(parent.memo.getCapacity());
+        this.pool = null;
+        this.typed = parent.typed;
     }
 
     public Scope getScope() {
         return scope;
     }
 
+    public OutputSink getOutput() {
+        return output;
+    }
+
+    public ExecutionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the fuel/deadline/cancellation budget, which is charged once per
+     * loop iteration and method call.
+     */
+    public void setBudget(ExecutionBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the cache of pure method results, whose statistics show how much
+     * recomputation memoization saved.
+     */
+    public MemoCache getMemoCache() {
+        return memo;
+    }
+
+    /**
+     * Replaces the cache of pure method results, e.g. to change its capacity
+     * (0 turns memoization off).
+     */
+    public void setMemoCache(MemoCache memo) {
+        this.memo = memo;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool that parallel FOR loops run on, or null to run every loop
+     * sequentially.
+     */
+    public void setForkJoinPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public boolean isTyped() {
+        return typed;
+    }
+
+    /**
+     * Sets whether binary operators use the implementations specialized for
+     * the analyzed types of their operands (the default), see
+     * {@link TypedOperator}, and primitive expressions are evaluated on longs,
+     * see {@link EscapeAnalyzer}. Untyped, every operation dispatches on the
+     * operator and the classes of its values.
+     */
+    public void setTyped(boolean typed) {
+        this.typed = typed;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Source ast) {
-        ast.getFields().forEach(this::visit);
-        ast.getMethods().forEach(this::visit);
-        List<Environment.PlcObject> args = new ArrayList<Environment.PlcObject>();
-        return scope.lookupFunction("main", 0).invoke(args);
+        // resolving the whole program (rather than method by method) also
+        // finds out which methods are pure
+        if (ast.getMethods().stream().anyMatch(method -> method.getFrameSize() < 0))
+            new Resolver().visit(ast);
+        try {
+            ast.getFields().forEach(this::visit);
+            ast.getMethods().forEach(this::visit);
+            List<Environment.PlcObject> args = new ArrayList<Environment.PlcObject>();
+            return scope.lookupFunction("main", 0).invoke(args);
+        } finally {
+            output.flush();
+        }
     }
 
     @Override
@@ -42,23 +176,86 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Method ast) {
-        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
-            try {
-                scope = new Scope(scope);
-                ast.getParameters().forEach(param -> {args.forEach(arg -> {scope.defineVariable(param, arg);});});
-                ast.getStatements().forEach(this::visit);
-            }
-            catch (Return r) {
-                return r.value;
-            }
-            finally {
-                scope = scope.getParent();
+        if (ast.getFrameSize() < 0)
+            new Resolver().visit(ast);
+        Scope definition = scope;
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            parameterTypes.add(Environment.Type.ANY);
+        }
+        Environment.Function function = scope.defineFunction(ast.getName(), ast.getName(), parameterTypes, Environment.Type.ANY, args -> {
+            Frame callee = new Frame(null, ast.getFrameSize());
+            for (int i = 0; i < args.size(); i++) {
+                callee.define(i, args.get(i));
             }
-            return Environment.NIL;
+            return invoke(ast, definition, callee);
         });
+        methods.put(function, new Definition(ast, definition));
         return Environment.NIL;
     }
 
+    /**
+     * Calls the DEF method {@code ast}, which was defined in {@code definition},
+     * with its arguments already bound to the first slots of {@code callee}.
+     * Results of pure methods are memoized on their argument values.
+     */
+    private Environment.PlcObject invoke(Ast.Method ast, Scope definition, Frame callee) {
+        MemoCache.Key key = ast.isPure() ? memo.key(ast, callee, ast.getParameters().size()) : null;
+        if (key != null) {
+            Environment.PlcObject result = memo.get(key);
+            if (result != null)
+                return result;
+            result = call(ast, definition, callee);
+            memo.put(key, result);
+            return result;
+        }
+        return call(ast, definition, callee);
+    }
+
+    /**
+     * Runs a call of {@code ast}. If it ends in a tail call, the callee is run
+     * next in the same Java frame instead of nesting, and so on until a method
+     * returns a value.
+     */
+    private Environment.PlcObject call(Ast.Method ast, Scope definition, Frame callee) {
+        Scope callerScope = scope;
+        Frame callerFrame = frame;
+        try {
+            Environment.PlcObject result = activate(ast, definition, callee);
+            while (result == TAIL_CALL) {
+                Definition next = tailCall;
+                Frame nextFrame = tailFrame;
+                tailCall = null;
+                tailFrame = null;
+                result = activate(next.ast, next.definition, nextFrame);
+            }
+            return result;
+        }
+        finally {
+            returning = null;
+            tailCall = null;
+            tailFrame = null;
+            scope = callerScope;
+            frame = callerFrame;
+        }
+    }
+
+    /**
+     * Runs a single activation of a DEF method, including each method reached
+     * through a tail call. This is the single entry point for method bodies so
+     * that instrumented subclasses (see {@link ProfilingInterpreter}) can
+     * observe them; the result must be passed through unchanged.
+     */
+    protected Environment.PlcObject activate(Ast.Method ast, Scope definition, Frame callee) {
+        budget.tick();
+        scope = definition;
+        frame = callee;
+        execute(ast.getStatements());
+        Environment.PlcObject result = returning != null ? returning : Environment.NIL;
+        returning = null;
+        return result;
+    }
+
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Expression ast) {
         visit(ast.getExpression());
@@ -67,28 +264,33 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Declaration ast) {
+        Environment.PlcObject value = Environment.NIL;
         if (ast.getValue().isPresent())
-            scope.defineVariable(ast.getName(), visit(ast.getValue().get()));
+            value = visit(ast.getValue().get());
+        if (ast.getSlot() >= 0 && frame != null)
+            frame.define(ast.getSlot(), value);
         else
-            scope.defineVariable(ast.getName(), Environment.NIL);
+            scope.defineVariable(ast.getName(), value);
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Assignment ast) {
+        if (partials != null && partials.containsKey(ast)) {
+            reduce(ast);
+            return Environment.NIL;
+        }
         if (ast.getReceiver().getClass() == Ast.Expr.Access.class) {
-            try {
-                scope = new Scope(scope);
-                Ast.Expr.Access temp = Ast.Expr.Access.class.cast(ast.getReceiver());
-                if (!(temp.getReceiver().isPresent())){
+            Ast.Expr.Access temp = Ast.Expr.Access.class.cast(ast.getReceiver());
+            if (!(temp.getReceiver().isPresent())){
+                if (temp.getDepth() >= 0 && frame != null)
+                    frame.set(temp.getDepth(), temp.getSlot(), visit(ast.getValue()));
+                else
                     scope.lookupVariable(temp.getName()).setValue(visit(ast.getValue()));
-                }
-                else{
-                    Environment.PlcObject rec = visit(temp.getReceiver().get());
-                    rec.setField(temp.getName(), visit(ast.getValue()));
-                }
-            } finally {
-                scope = scope.getParent();
+            }
+            else{
+                Environment.PlcObject rec = visit(temp.getReceiver().get());
+                rec.setField(temp.getName(), visit(ast.getValue()));
             }
         }
         else
@@ -98,28 +300,22 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.If ast) {
-        if (!requireType(Boolean.class, visit(ast.getCondition()))) { // todo debug comments
+        if (!requireType(Boolean.class, visit(ast.getCondition()))) {
             try {
-                scope = new Scope(scope);
-                for (Ast.Stmt stmt : ast.getElseStatements()) {
-                    visit(stmt);
-                }
+                enterBlock(ast.getElseFrameSize());
+                execute(ast.getElseStatements());
             }
-            catch(Exception e){/* System.out.println("115");*/}
             finally {
-                scope = scope.getParent();
+                exitBlock(ast.getElseFrameSize());
             }
         }
         else{
             try {
-                scope = new Scope(scope);
-                for (Ast.Stmt stmt : ast.getThenStatements()) {
-                    visit(stmt);
-                }
+                enterBlock(ast.getThenFrameSize());
+                execute(ast.getThenStatements());
             }
-            catch (Exception e){/* System.out.println("129");*/}
             finally {
-                scope = scope.getParent();
+                exitBlock(ast.getThenFrameSize());
             }
         }
         return Environment.NIL;
@@ -128,36 +324,113 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Stmt.For ast) {
         Iterable it = requireType(Iterable.class, visit(ast.getValue()));
-        it.forEach( e -> {
+        if (ast.getFrameSize() >= 0 && frame != null) {
+            // one frame is reused by every iteration, each one redefines its slots before reading them
+            try {
+                enterBlock(ast.getFrameSize());
+                if (it instanceof IntegerRange) {
+                    // ranges are counted through directly, without an iterator
+                    IntegerRange range = (IntegerRange) it;
+                    if (ast.isParallel() && pool != null && pool.getParallelism() > 1 && range.size() >= PARALLEL_THRESHOLD) {
+                        parallel(ast, range, frame.getParent());
+                        return Environment.NIL;
+                    }
+                    for (long i = range.getStart(); range.includes(i); i += range.getStep()) {
+                        budget.tick();
+                        frame.define(0, Environment.createInteger(i));
+                        execute(ast.getStatements());
+                        if (returning != null || range.isLast(i))
+                            break;
+                    }
+                    return Environment.NIL;
+                }
+                for (Object e : it) {
+                    budget.tick();
+                    frame.define(0, (Environment.PlcObject) e);
+                    execute(ast.getStatements());
+                    if (returning != null)
+                        break;
+                }
+            } finally {
+                exitBlock(ast.getFrameSize());
+            }
+            return Environment.NIL;
+        }
+        for (Object e : it) {
+            budget.tick();
             try {
                 scope = new Scope(scope);
                 scope.defineVariable(ast.getName(), (Environment.PlcObject) e);
-                ast.getStatements().forEach( stmt -> {visit(stmt);});
+                execute(ast.getStatements());
             } finally {
                 scope = scope.getParent();
             }
-        });
+            if (returning != null)
+                break;
+        }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.While ast) {
+        if (ast.getFrameSize() >= 0 && frame != null) {
+            // same as FOR, the body frame (if any) is shared by all iterations,
+            // but the condition is resolved against the enclosing frame
+            Frame outer = frame;
+            Frame body = ast.getFrameSize() > 0 ? new Frame(outer, ast.getFrameSize()) : outer;
+            try {
+                while (requireType(Boolean.class, visit(ast.getCondition()))) {
+                    budget.tick();
+                    frame = body;
+                    execute(ast.getStatements());
+                    frame = outer;
+                    if (returning != null)
+                        break;
+                }
+            } finally {
+                frame = outer;
+            }
+            return Environment.NIL;
+        }
         while (requireType(Boolean.class, visit(ast.getCondition()))) {
+            budget.tick();
             try {
                 scope = new Scope(scope);
-                for (Ast.Stmt stmt : ast.getStatements()) {
-                    visit(stmt);
-                }
+                execute(ast.getStatements());
             } finally {
                 scope = scope.getParent();
             }
+            if (returning != null)
+                break;
         }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Stmt.Return ast) {
-        throw new Return(visit(ast.getValue()));
+        // A RETURN of a call to a DEF method is a tail call. Inside a method it
+        // is left to invoke() to run after this frame is gone, so deep
+        // recursion runs in constant Java stack. Outside of a method there is
+        // no call to consume the value, so nothing would clear it.
+        if (frame == null)
+            throw new RuntimeException("Unsuccessful - RETURN outside of a method");
+        if (ast.getValue() instanceof Ast.Expr.Function) {
+            Ast.Expr.Function call = (Ast.Expr.Function) ast.getValue();
+            if (!call.getReceiver().isPresent()) {
+                Environment.Function function = lookup(call);
+                Definition method = methods.get(function);
+                if (method != null) {
+                    tailFrame = bind(method.ast, call);
+                    tailCall = method;
+                    returning = TAIL_CALL;
+                }
+                else
+                    returning = function.invoke(arguments(call));
+                return Environment.NIL;
+            }
+        }
+        returning = visit(ast.getValue());
+        return Environment.NIL;
     }
 
     @Override
@@ -165,7 +438,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         if (ast.getLiteral() == null)
             return Environment.NIL;
         else
-            return Environment.create(ast.getLiteral());
+            return ast.getObject();
     }
 
     @Override
@@ -177,141 +450,145 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Expr.Binary ast) {
 
         String operator = ast.getOperator();
-        // AND OR
+        // AND OR - the right operand is only evaluated if it decides the result
         if (operator.equals("AND")){
-            if (requireType(Boolean.class, visit(ast.getLeft())) == requireType(Boolean.class, visit(ast.getRight())))
-                return Environment.create(ast.getLeft());
-            else
-                return Environment.create(Boolean.FALSE);
+            if (!requireType(Boolean.class, visit(ast.getLeft())))
+                return Environment.create(false);
+            return Environment.create(requireType(Boolean.class, visit(ast.getRight())).booleanValue());
         }
         else if (operator.equals("OR")){
-            if (requireType(Boolean.class, visit(ast.getLeft())) == Boolean.TRUE)
-                return visit(ast.getLeft());
-            else if (requireType(Boolean.class, visit(ast.getRight())) == Boolean.TRUE)
-                return visit(ast.getRight());
-            else
-                return Environment.create(Boolean.FALSE);
+            if (requireType(Boolean.class, visit(ast.getLeft())))
+                return Environment.create(true);
+            return Environment.create(requireType(Boolean.class, visit(ast.getRight())).booleanValue());
         }
-        // COMPARISON
-        else if (operator.equals("<")){
-            if (visit(ast.getLeft()).getValue() instanceof Comparable && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                int i;
-
-                Comparable<Object> left = (Comparable<Object>)visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>)visit(ast.getRight()).getValue();
-                i = left.compareTo(right);
-
-                if (i < 0)
-                    return Environment.create(Boolean.TRUE);
-                else
-                    return Environment.create(Boolean.FALSE);
-            }
+        if (!typed)
+            return binary(operator, visit(ast.getLeft()), visit(ast.getRight()));
+        // the operator is chosen from the analyzed types once per expression,
+        // racing workers of a parallel FOR just choose the same one
+        if (ast.isPrimitive()) {
+            // the intermediate results can't escape (see EscapeAnalyzer), so
+            // they stay longs and only the result is wrapped
+            boxed = false;
+            long result = primitive(ast);
+            if (!boxed)
+                return ast.getEvaluator().isComparison() ? Environment.create(result != 0) : Environment.createInteger(result);
+            // the expression has no effects, so it can just be evaluated again
+            // with wrappers (and BigIntegers)
         }
-        else if (operator.equals(">")){
-            if (visit(ast.getLeft()).getValue() instanceof Comparable && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                int i;
-
-                Comparable<Object> left = (Comparable<Object>)visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>)visit(ast.getRight()).getValue();
-                i = left.compareTo(right);
-
-                if (i > 0)
-                    return Environment.create(Boolean.TRUE);
-                else
-                    return Environment.create(Boolean.FALSE);
-            }
+        TypedOperator evaluator = ast.getEvaluator();
+        if (evaluator == null) {
+            evaluator = TypedOperator.of(ast);
+            ast.setEvaluator(evaluator);
         }
-        else if (operator.equals("<=")){
-            if (visit(ast.getLeft()).getValue() instanceof Comparable && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                int i;
-
-                Comparable<Object> left = (Comparable<Object>)visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>)visit(ast.getRight()).getValue();
-                i = left.compareTo(right);
+        return evaluator.apply(operator, visit(ast.getLeft()), visit(ast.getRight()));
+    }
 
-                if (i <= 0)
-                    return Environment.create(Boolean.TRUE);
-                else
-                    return Environment.create(Boolean.FALSE);
+    /**
+     * Evaluates part of a primitive expression on longs. If a value isn't an
+     * Integer that fits in a long, or an operator can't be applied exactly,
+     * this sets {@code boxed} and the result is meaningless.
+     */
+    private long primitive(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            long left = primitive(binary.getLeft());
+            long right = primitive(binary.getRight());
+            TypedOperator evaluator = binary.getEvaluator();
+            if (boxed || !evaluator.isExact(left, right)) {
+                boxed = true;
+                return 0;
             }
+            return evaluator.applyLong(left, right);
         }
-        else if (operator.equals(">=")){
-            if (visit(ast.getLeft()).getValue() instanceof Comparable && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                int i;
+        if (ast instanceof Ast.Expr.Group)
+            return primitive(((Ast.Expr.Group) ast).getExpression());
+        Environment.PlcObject value = visit(ast);
+        if (!value.isSmallInteger()) {
+            boxed = true;
+            return 0;
+        }
+        return value.getLong();
+    }
 
-                Comparable<Object> left = (Comparable<Object>)visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>)visit(ast.getRight()).getValue();
-                i = left.compareTo(right);
+    /**
+     * Applies a binary operator other than AND/OR to evaluated operands, which
+     * is shared with the {@link IrInterpreter} so both agree on semantics.
+     */
+    static Environment.PlcObject binary(String operator, Environment.PlcObject leftObject, Environment.PlcObject rightObject) {
+        // Integers that fit in a long skip BigInteger entirely unless they overflow
+        if (leftObject.isSmallInteger() && rightObject.isSmallInteger()) {
+            Environment.PlcObject result = integerBinary(operator, leftObject.getLong(), rightObject.getLong());
+            if (result != null)
+                return result;
+        }
+        Object left = leftObject.getValue();
+        Object right = rightObject.getValue();
 
-                if (i >= 0)
-                    return Environment.create(Boolean.TRUE);
-                else
-                    return Environment.create(Boolean.FALSE);
+        // COMPARISON
+        if (operator.equals("<") || operator.equals(">") || operator.equals("<=") || operator.equals(">=")) {
+            if (left instanceof Comparable && left.getClass() == right.getClass()) {
+                int i = ((Comparable<Object>) left).compareTo(right);
+                switch (operator) {
+                    case "<":
+                        return Environment.create(i < 0);
+                    case ">":
+                        return Environment.create(i > 0);
+                    case "<=":
+                        return Environment.create(i <= 0);
+                    default:
+                        return Environment.create(i >= 0);
+                }
             }
         }
         // EQUALITY
         else if (operator.equals("==")){
-            if (visit(ast.getLeft()).getValue().equals(visit(ast.getRight()).getValue()))
-                return Environment.create(Boolean.TRUE);
-            else
-                return Environment.create(Boolean.FALSE);
+            return Environment.create(left.equals(right));
         }
         else if (operator.equals("!=")){
-            if (visit(ast.getLeft()).getValue().equals(visit(ast.getRight()).getValue()))
-                return Environment.create(Boolean.FALSE);
-            else
-                return Environment.create(Boolean.TRUE);
+            return Environment.create(!left.equals(right));
         }
         // ADDITION SUBTRACTION
         else if (operator.equals("+")) {
-            if (visit(ast.getLeft()).getValue().getClass() == BigInteger.class && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass())
-                return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).add(BigInteger.class.cast(visit(ast.getRight()).getValue())));
-            else if (visit(ast.getLeft()).getValue().getClass() == BigDecimal.class && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass())
-                return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).add(BigDecimal.class.cast(visit(ast.getRight()).getValue())));
+            if (left.getClass() == BigInteger.class && left.getClass() == right.getClass())
+                return Environment.create(((BigInteger) left).add((BigInteger) right));
+            else if (left.getClass() == BigDecimal.class && left.getClass() == right.getClass())
+                return Environment.create(((BigDecimal) left).add((BigDecimal) right));
             // Must also handle string concatenation?
-            else if (visit(ast.getLeft()).getValue().getClass() == String.class || visit(ast.getRight()).getValue().getClass() == String.class)
-                return Environment.create(visit(ast.getLeft()).getValue().toString() + visit(ast.getRight()).getValue().toString());
+            else if (left.getClass() == String.class || right.getClass() == String.class)
+                return Environment.create(left.toString() + right.toString());
             else
                 throw new RuntimeException("Addition Unsuccessful, incompatible types");
         }
         else if (operator.equals("-")) {
-            if ((visit(ast.getLeft()).getValue().getClass() == BigDecimal.class || visit(ast.getLeft()).getValue().getClass() == BigInteger.class) && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                // Integer
-                if (visit(ast.getLeft()).getValue().getClass() == BigInteger.class)
-                        return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).subtract(BigInteger.class.cast(visit(ast.getRight()).getValue())));
-                // Decimal
-                else if (visit(ast.getLeft()).getValue().getClass() == BigDecimal.class && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass())
-                        return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).subtract(BigDecimal.class.cast(visit(ast.getRight()).getValue())));
-            }
+            if (left.getClass() == BigInteger.class && left.getClass() == right.getClass())
+                return Environment.create(((BigInteger) left).subtract((BigInteger) right));
+            else if (left.getClass() == BigDecimal.class && left.getClass() == right.getClass())
+                return Environment.create(((BigDecimal) left).subtract((BigDecimal) right));
             else
                 // Do not need to handle strings, subtraction makes no sense
                 throw new RuntimeException("Subtraction Unsuccessful, incompatible types");
         }
         // MULTIPLICATION DIVISION
         else if (operator.equals("*")) {
-            if ((visit(ast.getLeft()).getValue().getClass() == BigDecimal.class || visit(ast.getLeft()).getValue().getClass() == BigInteger.class) && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                // Integer
-                if (visit(ast.getLeft()).getValue().getClass() == BigInteger.class)
-                    return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).multiply(BigInteger.class.cast(visit(ast.getRight()).getValue())));
-                // Decimal
-                else if (visit(ast.getLeft()).getValue().getClass() == BigDecimal.class && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass())
-                    return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).multiply(BigDecimal.class.cast(visit(ast.getRight()).getValue())));
-            }
+            if (left.getClass() == BigInteger.class && left.getClass() == right.getClass())
+                return Environment.create(((BigInteger) left).multiply((BigInteger) right));
+            else if (left.getClass() == BigDecimal.class && left.getClass() == right.getClass())
+                return Environment.create(((BigDecimal) left).multiply((BigDecimal) right));
             else
                 throw new RuntimeException("Multiplication Unsuccessful, incompatible types");
         }
         else if (operator.equals("/")) {
-            if ((visit(ast.getLeft()).getValue().getClass() == BigDecimal.class || visit(ast.getLeft()).getValue().getClass() == BigInteger.class) && visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
+            if ((left.getClass() == BigDecimal.class || left.getClass() == BigInteger.class) && left.getClass() == right.getClass()) {
 
                 // Error handling - throw exception if division by 0
-                if ((visit(ast.getRight()).getValue().getClass() == BigInteger.class && visit(ast.getRight()).getValue().equals(BigInteger.ZERO)))
+                if (right.equals(BigInteger.ZERO))
                     throw new RuntimeException("Division by zero error");
 
                 // Otherwise, continue
-                if (visit(ast.getLeft()).getValue().getClass() == BigInteger.class)
-                    return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).divide(BigInteger.class.cast(visit(ast.getRight()).getValue())));
-                else if (visit(ast.getLeft()).getValue().getClass() == BigDecimal.class)
-                    return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).divide(BigDecimal.class.cast(visit(ast.getRight()).getValue()), RoundingMode.HALF_EVEN));
+                if (left.getClass() == BigInteger.class)
+                    return Environment.create(((BigInteger) left).divide((BigInteger) right));
+                else
+                    return Environment.create(((BigDecimal) left).divide((BigDecimal) right, RoundingMode.HALF_EVEN));
             }
             else
                 throw new RuntimeException("Division Unsuccessful, incompatible types");
@@ -327,33 +604,287 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
             Environment.PlcObject rec = visit(ast.getReceiver().get());
             return rec.getField(ast.getName()).getValue();
         }
+        if (ast.getDepth() >= 0 && frame != null)
+            return frame.get(ast.getDepth(), ast.getSlot());
         return scope.lookupVariable(ast.getName()).getValue();
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expr.Function ast) {
+        if (ast.getReceiver().isPresent()) {
+            List<Environment.PlcObject> args = arguments(ast);
+            Environment.PlcObject rec = visit(ast.getReceiver().get());
+            return rec.callMethod(ast.getName(), args);
+        }
+        Environment.Function function = lookup(ast);
+        Definition method = methods.get(function);
+        if (method == null)
+            return function.invoke(arguments(ast));
+        // DEF methods skip the argument list and lambda, the arguments are
+        // evaluated straight into the callee's frame
+        return invoke(method.ast, method.definition, bind(method.ast, ast));
+    }
+
+    /**
+     * Helper function to find the function called by {@code call}. Inside a
+     * method the scope is always the one the method was defined in, so each
+     * call site there resolves to the same function every time and is only
+     * looked up once.
+     */
+    private Environment.Function lookup(Ast.Expr.Function call) {
+        if (frame == null)
+            return scope.lookupFunction(call.getName(), call.getArguments().size());
+        Environment.Function function = callSites.get(call);
+        if (function == null) {
+            function = scope.lookupFunction(call.getName(), call.getArguments().size());
+            callSites.put(call, function);
+        }
+        return function;
+    }
+
+    /**
+     * Helper function to evaluate the arguments of {@code call} into the
+     * parameter slots of a new frame for {@code method}.
+     */
+    private Frame bind(Ast.Method method, Ast.Expr.Function call) {
+        Frame callee = new Frame(null, method.getFrameSize());
+        List<Ast.Expr> arguments = call.getArguments();
+        for (int i = 0; i < arguments.size(); i++) {
+            callee.define(i, visit(arguments.get(i)));
+        }
+        return callee;
+    }
+
+    private List<Environment.PlcObject> arguments(Ast.Expr.Function ast) {
+        List<Environment.PlcObject> args = new ArrayList<Environment.PlcObject>(ast.getArguments().size());
+        for (int i = 0; i < ast.getArguments().size(); i++) {
+            args.add(visit(ast.getArguments().get(i)));
+        }
+        return args;
+    }
+
+    /**
+     * Fast path for binary operators on two Integers that fit in a long. Returns
+     * null if the result overflows (or the operator isn't arithmetic), in which
+     * case the caller falls back to {@link BigInteger}.
+     */
+    private static Environment.PlcObject integerBinary(String operator, long left, long right) {
         try {
-            scope = new Scope(scope);
-            List<Environment.PlcObject> args = new ArrayList<Environment.PlcObject>();
-            for (int i = 0; i < ast.getArguments().size(); i++) {
-                args.add(visit(ast.getArguments().get(i)));
+            switch (operator) {
+                case "+":
+                    return Environment.createInteger(Math.addExact(left, right));
+                case "-":
+                    return Environment.createInteger(Math.subtractExact(left, right));
+                case "*":
+                    return Environment.createInteger(Math.multiplyExact(left, right));
+                case "/":
+                    if (right == 0)
+                        throw new RuntimeException("Division by zero error");
+                    if (left == Long.MIN_VALUE && right == -1)
+                        return null;
+                    return Environment.createInteger(left / right);
+                case "<":
+                    return Environment.create(left < right);
+                case ">":
+                    return Environment.create(left > right);
+                case "<=":
+                    return Environment.create(left <= right);
+                case ">=":
+                    return Environment.create(left >= right);
+                case "==":
+                    return Environment.create(left == right);
+                case "!=":
+                    return Environment.create(left != right);
+                default:
+                    return null;
             }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+    }
 
-            Boolean receiver = ast.getReceiver().isPresent();
-            if (receiver) {
-                Environment.PlcObject rec = visit(ast.getReceiver().get());
-                return rec.callMethod(ast.getName(), args);
+    /**
+     * Runs the iterations of a parallel FOR loop over {@code range} on the
+     * pool, in chunks that each get their own worker. {@code outer} is the
+     * frame enclosing the loop, which workers read but never write; their
+     * contributions to the loop's reductions are combined in iteration order
+     * and applied once all chunks are done.
+     */
+    private void parallel(Ast.Stmt.For ast, IntegerRange range, Frame outer) {
+        long size = range.size();
+        long grain = Math.max(PARALLEL_THRESHOLD / 4, size / (pool.getParallelism() * 4L));
+        Chunk chunk = new Chunk(ast, range, outer, 0, size, grain);
+        ForkJoinTask<Map<Ast.Stmt.Assignment, Partial>> task = pool.submit(chunk);
+        Map<Ast.Stmt.Assignment, Partial> results;
+        try {
+            results = task.get();
+        } catch (InterruptedException e) {
+            // the workers can't see this thread's interrupt, so stop them through the budget
+            budget.cancel();
+            task.quietlyJoin();
+            Thread.currentThread().interrupt();
+            throw new ExecutionBudget.Exceeded("Execution cancelled.");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        if (chunk.failure instanceof Error) {
+            throw (Error) chunk.failure;
+        } else if (chunk.failure != null) {
+            throw (RuntimeException) chunk.failure;
+        }
+        for (Partial partial : results.values()) {
+            if (partial != null)
+                partial.target.define(partial.slot, combine(partial.operator, partial.target.get(0, partial.slot), partial.value));
+        }
+    }
+
+    private final class Chunk extends RecursiveTask<Map<Ast.Stmt.Assignment, Partial>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Ast.Stmt.For ast;
+        private final IntegerRange range;
+        private final Frame outer;
+        private final long from;
+        private final long to;
+        private final long grain;
+        // what the first failing iteration threw, kept rather than thrown so it
+        // isn't wrapped by the pool and the earliest one wins, as in a sequential loop
+        private Throwable failure;
+
+        private Chunk(Ast.Stmt.For ast, IntegerRange range, Frame outer, long from, long to, long grain) {
+            this.ast = ast;
+            this.range = range;
+            this.outer = outer;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Map<Ast.Stmt.Assignment, Partial> compute() {
+            if (to - from <= grain) {
+                try {
+                    return run();
+                } catch (RuntimeException | Error e) {
+                    failure = e;
+                    return new IdentityHashMap<>();
+                }
             }
-            return scope.lookupFunction(ast.getName(), args.size()).invoke(args);
-        } finally {
-            scope = scope.getParent();
+            long middle = from + (to - from) / 2;
+            Chunk left = new Chunk(ast, range, outer, from, middle, grain);
+            left.fork();
+            Chunk second = new Chunk(ast, range, outer, middle, to, grain);
+            Map<Ast.Stmt.Assignment, Partial> right = second.compute();
+            Map<Ast.Stmt.Assignment, Partial> results = left.join();
+            failure = left.failure != null ? left.failure : second.failure;
+            for (Map.Entry<Ast.Stmt.Assignment, Partial> entry : right.entrySet()) {
+                Partial partial = results.get(entry.getKey());
+                if (partial == null)
+                    results.put(entry.getKey(), entry.getValue());
+                else if (entry.getValue() != null)
+                    partial.value = combine(partial.operator, partial.value, entry.getValue().value);
+            }
+            return results;
+        }
+
+        private Map<Ast.Stmt.Assignment, Partial> run() {
+            Interpreter worker = new Interpreter(Interpreter.this);
+            worker.partials = new IdentityHashMap<>();
+            for (Ast.Stmt.Assignment reduction : ast.getReductions()) {
+                worker.partials.put(reduction, null);
+            }
+            worker.frame = new Frame(outer, ast.getFrameSize());
+            try {
+                for (long i = from; i < to; i++) {
+                    worker.budget.tick();
+                    worker.frame.define(0, Environment.createInteger(range.get(i)));
+                    worker.execute(ast.getStatements());
+                }
+            } finally {
+                worker.budget.release();
+            }
+            return worker.partials;
+        }
+
+    }
+
+    /**
+     * Helper function for a reduction {@code x = x op e} in a parallel worker,
+     * which adds {@code e} to the worker's contribution instead of assigning
+     * {@code x}. A NIL {@code x} or {@code e} fails right away through
+     * {@link #binary}, as the same iteration of a sequential loop would.
+     */
+    private void reduce(Ast.Stmt.Assignment ast) {
+        Ast.Expr.Binary value = (Ast.Expr.Binary) ast.getValue();
+        Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+        Environment.PlcObject contribution = visit(value.getRight());
+        Partial partial = partials.get(ast);
+        if (partial == null) {
+            Frame target = frame.ancestor(receiver.getDepth());
+            Environment.PlcObject accumulator = target.get(0, receiver.getSlot());
+            if (!isInteger(accumulator) || !isInteger(contribution))
+                binary(value.getOperator(), accumulator, contribution);
+            partials.put(ast, new Partial(target, receiver.getSlot(), value.getOperator(), contribution));
+        } else {
+            if (!isInteger(contribution))
+                binary(value.getOperator(), partial.target.get(0, partial.slot), contribution);
+            partial.value = combine(partial.operator, partial.value, contribution);
+        }
+    }
+
+    private static boolean isInteger(Environment.PlcObject object) {
+        return object.isSmallInteger() || object.getValue() instanceof BigInteger;
+    }
+
+    /**
+     * Helper function to add or multiply the Integers of a reduction.
+     */
+    private static Environment.PlcObject combine(String operator, Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.isSmallInteger() && right.isSmallInteger()) {
+            Environment.PlcObject result = integerBinary(operator, left.getLong(), right.getLong());
+            if (result != null)
+                return result;
+        }
+        BigInteger a = requireType(BigInteger.class, left);
+        BigInteger b = requireType(BigInteger.class, right);
+        return Environment.create(operator.equals("+") ? a.add(b) : a.multiply(b));
+    }
+
+    /**
+     * Helper function to execute a list of statements, stopping early once a
+     * RETURN has been executed.
+     */
+    private void execute(List<Ast.Stmt> statements) {
+        for (int i = 0; i < statements.size() && returning == null; i++) {
+            visit(statements.get(i));
         }
     }
 
+    /**
+     * Helper functions to open and close the storage for a nested block. Blocks
+     * inside a resolved method get a {@link Frame} of the given size, or none at
+     * all if they don't bind anything (size 0). Anything else (such as a
+     * statement visited on its own) falls back to a new scope.
+     */
+    private void enterBlock(int frameSize) {
+        if (frameSize > 0 && frame != null)
+            frame = new Frame(frame, frameSize);
+        else if (frameSize < 0 || frame == null)
+            scope = new Scope(scope);
+    }
+
+    private void exitBlock(int frameSize) {
+        if (frameSize > 0 && frame != null)
+            frame = frame.getParent();
+        else if (frameSize < 0 || frame == null)
+            scope = scope.getParent();
+    }
+
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
@@ -361,14 +892,29 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         }
     }
 
-    /**
-     * Exception class for returning values.
-     */
-    private static class Return extends RuntimeException {
+    private static final class Definition {
+
+        private final Ast.Method ast;
+        private final Scope definition;
+
+        private Definition(Ast.Method ast, Scope definition) {
+            this.ast = ast;
+            this.definition = definition;
+        }
+
+    }
+
+    private static final class Partial {
 
-        private final Environment.PlcObject value;
+        private final Frame target;
+        private final int slot;
+        private final String operator;
+        private Environment.PlcObject value;
 
-        private Return(Environment.PlcObject value) {
+        private Partial(Frame target, int slot, String operator, Environment.PlcObject value) {
+            this.target = target;
+            this.slot = slot;
+            this.operator = operator;
             this.value = value;
         }
 
@@ -0,0 +1,292 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+public class InterpreterTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testIntegers(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testIntegers() {
+        return Stream.of(
+                Arguments.of("Small", "DEF main(): Integer DO RETURN (1 + (2 * 3)) - 4; END", "3"),
+                Arguments.of("Truncating Division", "DEF main(): Integer DO LET x = 0 - 7; print(x / 2); RETURN 7 / (0 - 2); END", "-3\n-3"),
+                Arguments.of("Overflow Multiply", "DEF main(): Integer DO LET x = 2147483647; RETURN x * x * 4; END", "18446744056529682436"),
+                Arguments.of("Overflow Add", "DEF main(): Integer DO LET x = 65536; LET half = x * x * x * 16384; LET max = (half - 1) + half; print(max); RETURN max + 1; END", "9223372036854775807\n9223372036854775808"),
+                Arguments.of("Underflow Subtract", "DEF main(): Integer DO LET x = 65536; LET min = 0 - x * x * x * 32768; print(min); RETURN min - 1; END", "-9223372036854775808\n-9223372036854775809"),
+                Arguments.of("Min Divided By Minus One", "DEF main(): Integer DO LET x = 65536; LET min = 0 - x * x * x * 32768; RETURN min / (0 - 1); END", "9223372036854775808"),
+                Arguments.of("Min Times Minus One", "DEF main(): Integer DO LET x = 65536; LET min = 0 - x * x * x * 32768; RETURN min * (0 - 1); END", "9223372036854775808"),
+                Arguments.of("Back To Long", "DEF main(): Integer DO LET x = 2147483647; LET big = x * x * 4; RETURN (big - (x * x * 4)) + 1; END", "1"),
+                Arguments.of("Comparisons", "DEF main(): Integer DO LET x = 2147483647; LET big = x * x * 4; print(big > x); print(x < big); print(big == x * x * 4); print(x != x); RETURN 0; END", "true\ntrue\ntrue\nfalse\n0"),
+                Arguments.of("Loop Accumulation", "DEF main(): Integer DO LET p = 1; LET i = 0; WHILE i < 30 DO p = p * 7; i = i + 1; END RETURN p; END", BigInteger.valueOf(7).pow(30).toString()),
+                Arguments.of("Division By Zero", "DEF main(): Integer DO LET x = 0; RETURN 1 / x; END", "error: Division by zero error")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testScopes(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testScopes() {
+        return Stream.of(
+                Arguments.of("Shadowed Field", "LET x: Integer = 1; DEF main(): Integer DO print(x); LET x = 2; print(x); RETURN x; END", "1\n2\n2"),
+                Arguments.of("Field Assignment", "LET x: Integer = 1; DEF bump(): Integer DO x = x + 1; RETURN x; END DEF main(): Integer DO bump(); bump(); RETURN x; END", "3"),
+                Arguments.of("If Block", "DEF main(): Integer DO LET x = 1; IF x == 1 DO LET x = 2; print(x); END RETURN x; END", "2\n1"),
+                Arguments.of("Frameless If", "DEF main(): Integer DO LET x = 1; IF x == 1 DO x = 2; ELSE x = 3; END RETURN x; END", "2"),
+                Arguments.of("While Locals Each Iteration", "DEF main(): Integer DO LET i = 0; WHILE i < 3 DO LET y: Integer; print(y); y = i; LET z = i * 2; print(z); i = i + 1; END RETURN i; END", "nil\n0\nnil\n2\nnil\n4\n3"),
+                Arguments.of("For Locals Each Iteration", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 3) DO LET y: Integer; print(y); y = i; s = s + y; END RETURN s; END", "nil\nnil\nnil\n3"),
+                Arguments.of("Nested Loops", "DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 3 DO LET j = 0; WHILE j < i DO LET k = i * j; s = s + k; j = j + 1; END i = i + 1; END RETURN s; END", "2"),
+                Arguments.of("Recursion In Loop", "DEF f(n: Integer): Integer DO LET r = 0; LET i = 0; WHILE i < n DO LET t = f(i); r = r + (t + 1); i = i + 1; END RETURN r; END DEF main(): Integer DO RETURN f(5); END", "31"),
+                Arguments.of("Call Result Assigned", "DEF id(n: Integer): Integer DO LET m = n; RETURN m; END DEF main(): Integer DO LET x = 1; x = id(x + 1); RETURN x; END", "2")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testReturns(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testReturns() {
+        return Stream.of(
+                Arguments.of("Stops Method", "DEF main(): Integer DO print(1); RETURN 2; print(3); END", "1\n2"),
+                Arguments.of("No Return", "DEF f(): Integer DO print(1); END DEF main(): Integer DO print(f()); RETURN 0; END", "1\nnil\n0"),
+                Arguments.of("From If", "DEF f(n: Integer): Integer DO IF n > 0 DO RETURN 1; ELSE RETURN 0 - 1; END print(0); END DEF main(): Integer DO print(f(5)); RETURN f(0 - 5); END", "1\n-1"),
+                Arguments.of("From While", "DEF main(): Integer DO LET i = 0; WHILE TRUE DO i = i + 1; IF i == 5 DO RETURN i; END END END", "5"),
+                Arguments.of("From Nested Loops", "DEF main(): Integer DO FOR i IN range(0, 10) DO LET j = 0; WHILE j < 10 DO IF (i * j) == 12 DO print(i); RETURN j; END j = j + 1; END END RETURN 0; END", "2\n6"),
+                Arguments.of("From For Over Method Result", "DEF f(): Integer DO FOR i IN range(0, 10) DO IF i == 3 DO RETURN i; END END RETURN 0 - 1; END DEF main(): Integer DO LET s = 0; FOR i IN range(0, 3) DO s = s + f(); END RETURN s; END", "9"),
+                Arguments.of("Callee Return In Condition", "DEF f(n: Integer): Boolean DO WHILE TRUE DO RETURN n < 3; END END DEF main(): Integer DO LET i = 0; WHILE f(i) DO print(i); i = i + 1; END RETURN i; END", "0\n1\n2\n3"),
+                Arguments.of("Callee Return In Argument", "DEF f(n: Integer): Integer DO IF n > 0 DO RETURN n; END RETURN 0; END DEF g(a: Integer, b: Integer): Integer DO print(a); RETURN b; END DEF main(): Integer DO RETURN g(f(1), f(2)); END", "1\n2"),
+                Arguments.of("After Error In Callee", "DEF f(n: Integer): Integer DO RETURN 1 / n; END DEF main(): Integer DO print(f(1)); RETURN f(0); END", "1\nerror: Division by zero error")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testShortCircuit(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testShortCircuit() {
+        return Stream.of(
+                Arguments.of("And Skips Right", "DEF t(): Boolean DO print(1); RETURN TRUE; END DEF main(): Integer DO print((1 > 2) AND t()); RETURN 0; END", "false\n0"),
+                Arguments.of("And Evaluates Right", "DEF t(): Boolean DO print(1); RETURN TRUE; END DEF main(): Integer DO print((1 < 2) AND t()); RETURN 0; END", "1\ntrue\n0"),
+                Arguments.of("Or Skips Right", "DEF t(): Boolean DO print(1); RETURN TRUE; END DEF main(): Integer DO print((1 < 2) OR t()); RETURN 0; END", "true\n0"),
+                Arguments.of("Or Evaluates Right", "DEF f(): Boolean DO print(1); RETURN 1 > 2; END DEF main(): Integer DO print((1 > 2) OR f()); RETURN 0; END", "1\nfalse\n0"),
+                Arguments.of("Nil Right Skipped", "LET b: Boolean; DEF main(): Integer DO print((1 > 2) AND b); print((1 < 2) OR b); RETURN 0; END", "false\ntrue\n0"),
+                Arguments.of("Division Right Skipped", "DEF main(): Integer DO LET x = 0; print((x != 0) AND ((10 / x) > 1)); RETURN 0; END", "false\n0"),
+                Arguments.of("Nil Right Evaluated", "LET b: Boolean; DEF main(): Integer DO print((1 < 2) AND b); RETURN 0; END", "error: Expected type java.lang.Boolean, received plc.project.Environment$1."),
+                Arguments.of("Nil Left", "LET b: Boolean; DEF main(): Integer DO print(b OR TRUE); RETURN 0; END", "error: Expected type java.lang.Boolean, received plc.project.Environment$1."),
+                Arguments.of("Chained", "DEF t(n: Integer): Boolean DO print(n); RETURN n > 1; END DEF main(): Integer DO print(t(1) OR (t(2) AND t(3))); RETURN 0; END", "1\n2\n3\ntrue\n0")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testArguments(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testArguments() {
+        return Stream.of(
+                Arguments.of("Order", "DEF sub(a: Integer, b: Integer): Integer DO RETURN a - b; END DEF main(): Integer DO RETURN sub(10, 3); END", "7"),
+                Arguments.of("Many", "DEF f(a: Integer, b: Integer, c: Integer, d: Integer, e: Integer, g: Integer): Integer DO RETURN ((a - b) * c) + ((d - e) * g); END DEF main(): Integer DO RETURN f(6, 5, 4, 3, 2, 1); END", "5"),
+                Arguments.of("Evaluated In Order", "DEF id(n: Integer): Integer DO print(n); RETURN n; END DEF sub(a: Integer, b: Integer): Integer DO RETURN a - b; END DEF main(): Integer DO RETURN sub(id(1), id(2)); END", "1\n2\n-1"),
+                Arguments.of("Caller Locals", "DEF f(a: Integer, b: Integer): Integer DO LET c = a * b; RETURN c; END DEF main(): Integer DO LET b = 2; LET a = 3; RETURN f(b, a + b); END", "10"),
+                Arguments.of("Same Names", "DEF f(n: Integer): Integer DO IF n == 0 DO RETURN 0; END LET m = f(n - 1); RETURN n + m; END DEF main(): Integer DO RETURN f(10); END", "55"),
+                Arguments.of("Nested Calls", "DEF add(a: Integer, b: Integer): Integer DO RETURN a + b; END DEF main(): Integer DO RETURN add(add(1, 2), add(add(3, 4), 5)); END", "15"),
+                Arguments.of("Argument Calls Back", "DEF g(x: Integer, y: Integer): Integer DO RETURN (x * 10) + y; END DEF f(a: Integer, b: Integer): Integer DO RETURN g(b, g(a, b)); END DEF main(): Integer DO RETURN f(1, 2); END", "32"),
+                Arguments.of("Field Argument", "LET k: Integer = 4; DEF f(k: Integer): Integer DO RETURN k * 2; END DEF main(): Integer DO print(f(k + 1)); RETURN k; END", "10\n4"),
+                Arguments.of("Nil Argument", "DEF f(x: Integer): Integer DO IF x == NIL DO RETURN 0; END RETURN x; END DEF main(): Integer DO LET y: Integer; RETURN f(y); END", "0"),
+                Arguments.of("Failing Argument", "DEF f(a: Integer, b: Integer): Integer DO RETURN a; END DEF main(): Integer DO LET x = 0; print(1); RETURN f(1, 1 / x); END", "1\nerror: Division by zero error")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTailCalls(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testTailCalls() {
+        return Stream.of(
+                Arguments.of("Deep Recursion", "DEF count(n: Integer, acc: Integer): Integer DO IF n == 0 DO RETURN acc; END RETURN count(n - 1, acc + n); END DEF main(): Integer DO RETURN count(200000, 0); END", "20000100000"),
+                Arguments.of("Else Branch", "DEF count(n: Integer, acc: Integer): Integer DO IF n == 0 DO RETURN acc; ELSE RETURN count(n - 1, acc + 1); END END DEF main(): Integer DO RETURN count(100000, 0); END", "100000"),
+                Arguments.of("Loop Body", "DEF count(n: Integer): Integer DO WHILE n > 0 DO RETURN count(n - 1); END RETURN 7; END DEF main(): Integer DO RETURN count(100000); END", "7"),
+                Arguments.of("Other Method", "DEF g(n: Integer): Integer DO print(n); RETURN n * 2; END DEF f(n: Integer): Integer DO RETURN g(n + 1); END DEF main(): Integer DO RETURN f(1) + f(2); END", "2\n3\n10"),
+                Arguments.of("Arguments Before Call", "DEF id(n: Integer): Integer DO print(n); RETURN n; END DEF f(a: Integer, b: Integer): Integer DO RETURN a - b; END DEF main(): Integer DO RETURN f(id(5), id(3)); END", "5\n3\n2"),
+                Arguments.of("Not Tail", "DEF fact(n: Integer): Integer DO IF n < 2 DO RETURN 1; END RETURN n * fact(n - 1); END DEF main(): Integer DO RETURN fact(25); END", "15511210043330985984000000"),
+                Arguments.of("Locals Not Shared", "DEF f(n: Integer, acc: Integer): Integer DO LET d = n * 2; IF n == 0 DO RETURN acc; END RETURN f(n - 1, acc + d); END DEF main(): Integer DO RETURN f(10, 0); END", "110")
+        );
+    }
+
+    @Test
+    void testTopLevelReturn() {
+        StringWriter writer = new StringWriter();
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(writer));
+        RuntimeException e = Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(new Parser(new Lexer("RETURN 1;").lex()).parseStatement()));
+        Assertions.assertEquals("Unsuccessful - RETURN outside of a method", e.getMessage());
+        // later statements still run
+        interpreter.visit(new Parser(new Lexer("print(2);").lex()).parseStatement());
+        interpreter.getOutput().flush();
+        Assertions.assertEquals("2" + System.lineSeparator(), writer.toString());
+    }
+
+    @Test
+    void testMemoized() {
+        String source = "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main(): Integer DO RETURN fib(80); END";
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(new StringWriter()));
+        Assertions.assertEquals(new BigInteger("23416728348467685"), interpreter.visit(analyze(source)).getValue());
+        Assertions.assertTrue(interpreter.getMemoCache().getHits() > 0);
+    }
+
+    @Test
+    void testMemoDisabled() {
+        String source = "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main(): Integer DO RETURN fib(20); END";
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(new StringWriter()));
+        interpreter.setMemoCache(new MemoCache(0));
+        Assertions.assertEquals(BigInteger.valueOf(6765), interpreter.visit(analyze(source)).getValue());
+        Assertions.assertEquals(0, interpreter.getMemoCache().getHits());
+    }
+
+    @Test
+    void testMemoEviction() {
+        String source = "DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO LET s = 0; FOR i IN range(0, 100) DO s = s + square(i) + square(i); END RETURN s; END";
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(new StringWriter()));
+        interpreter.setForkJoinPool(null);
+        interpreter.setMemoCache(new MemoCache(10));
+        Assertions.assertEquals(BigInteger.valueOf(656700), interpreter.visit(analyze(source)).getValue());
+        Assertions.assertTrue(interpreter.getMemoCache().getSize() <= 10);
+        Assertions.assertTrue(interpreter.getMemoCache().getEvictions() > 0);
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testNotMemoized(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testNotMemoized() {
+        return Stream.of(
+                Arguments.of("Prints", "DEF p(n: Integer): Integer DO print(n); RETURN n; END DEF main(): Integer DO p(1); p(1); RETURN p(1); END", "1\n1\n1\n1"),
+                Arguments.of("Reads Field", "LET k: Integer = 1; DEF f(n: Integer): Integer DO RETURN n * k; END DEF main(): Integer DO print(f(3)); k = 2; RETURN f(3); END", "3\n6"),
+                Arguments.of("Calls Impure", "LET k: Integer = 1; DEF g(): Integer DO RETURN k; END DEF f(n: Integer): Integer DO RETURN n + g(); END DEF main(): Integer DO print(f(3)); k = 5; RETURN f(3); END", "4\n8")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRanges(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testRanges() {
+        return Stream.of(
+                Arguments.of("Range 2", "DEF main(): Integer DO FOR i IN range(0, 3) DO print(i); END RETURN 0; END", "0\n1\n2\n0"),
+                Arguments.of("Range 3", "DEF main(): Integer DO FOR i IN range(1, 10, 4) DO print(i); END RETURN 0; END", "1\n5\n9\n0"),
+                Arguments.of("Negative Step", "DEF main(): Integer DO FOR i IN range(3, 0 - 3, 0 - 2) DO print(i); END RETURN 0; END", "3\n1\n-1\n0"),
+                Arguments.of("Empty", "DEF main(): Integer DO FOR i IN range(3, 0) DO print(i); END RETURN 0; END", "0"),
+                Arguments.of("Bounds Evaluated Once", "DEF id(n: Integer): Integer DO print(n); RETURN n; END DEF main(): Integer DO LET s = 0; FOR i IN range(id(0), id(3)) DO s = s + i; END RETURN s; END", "0\n3\n3"),
+                Arguments.of("Lazy", "DEF main(): Integer DO FOR i IN range(0, 2000000000) DO IF i == 5 DO RETURN i; END END RETURN 0; END", "5"),
+                Arguments.of("Large Parallel Sum", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 100000, 3) DO s = s + i; END RETURN s; END", "1666683333"),
+                Arguments.of("Zero Step", "DEF main(): Integer DO FOR i IN range(0, 3, 0) DO print(i); END RETURN 0; END", "error: The step of a range cannot be zero.")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testTypedOperators(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testTypedOperators() {
+        return Stream.of(
+                Arguments.of("Decimals", "DEF main(): Integer DO LET d = 1.5; print(d + 2.25); print(d - 2.5); print(d * 1.5); print(d / 0.5); print(1.0 / 3.0); RETURN 0; END", "3.75\n-1.0\n2.25\n3.0\n0.3\n0"),
+                Arguments.of("Decimal Comparisons", "DEF main(): Integer DO LET d = 1.5; print(d < 2.5); print(d == 1.50); RETURN 0; END", "true\nfalse\n0"),
+                Arguments.of("Concatenation", "DEF main(): Integer DO LET s = \"n\"; print(s + 1); print(1 + s); print(s + 1.5); print(s + TRUE); print(s + s); RETURN 0; END", "n1\n1n\nn1.5\nntrue\nnn\n0"),
+                Arguments.of("String Comparisons", "DEF main(): Integer DO LET s = \"a\"; print(s < \"b\"); print(s == \"a\"); print(s != \"a\"); RETURN 0; END", "true\ntrue\nfalse\n0"),
+                Arguments.of("Integer Comparisons", "DEF main(): Integer DO LET x = 3; print(x <= 3); print(x >= 4); print(x > 2); print(x != 3); RETURN 0; END", "true\nfalse\ntrue\nfalse\n0"),
+                Arguments.of("Nil Integer", "LET y: Integer; DEF main(): Integer DO RETURN y + 1; END", "error: Addition Unsuccessful, incompatible types"),
+                Arguments.of("Nil Decimal", "LET y: Decimal; DEF main(): Integer DO print(y * 1.5); RETURN 0; END", "error: Multiplication Unsuccessful, incompatible types"),
+                Arguments.of("Nil String", "LET y: String; DEF main(): Integer DO print(y + \"a\"); RETURN 0; END", "nila\n0"),
+                Arguments.of("Nil Comparison", "LET y: Integer; DEF main(): Integer DO print(y == 1); print(y < 1); RETURN 0; END", "false\nerror: Unexpected error, given types are incompatible with binary operands."),
+                Arguments.of("Decimal Division By Zero", "DEF main(): Integer DO LET d = 1.5; print(d / (d - 1.5)); RETURN 0; END", "error: / by zero")
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testPrimitiveExpressions(String test, String source, String expected) {
+        test(source, expected);
+    }
+
+    private static Stream<Arguments> testPrimitiveExpressions() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "DEF main(): Integer DO LET x = 7; LET y = 3; RETURN ((x * y) + (x / y)) - (y - x); END", "27"),
+                Arguments.of("Comparison", "DEF main(): Integer DO LET x = 7; print((x * 2) < (x + 8)); print((x - 7) == 0); RETURN 0; END", "true\ntrue\n0"),
+                Arguments.of("Fields", "LET k: Integer = 5; DEF main(): Integer DO LET x = 2; RETURN (k * x) + k; END", "15"),
+                Arguments.of("Intermediate Overflow", "DEF main(): Integer DO LET x = 2147483647; LET y = (x * x * x) / (x * x); RETURN y; END", "2147483647"),
+                Arguments.of("Big Operand", "DEF main(): Integer DO LET x = 2147483647; LET big = x * x * 4; RETURN (big * 2) - big; END", "18446744056529682436"),
+                Arguments.of("Division By Zero", "DEF main(): Integer DO LET x = 0; print(1); RETURN (x + 1) / (x * 2); END", "1\nerror: Division by zero error"),
+                Arguments.of("Nil Operand", "LET y: Integer; DEF main(): Integer DO LET x = 1; RETURN (x + y) * 2; END", "error: Addition Unsuccessful, incompatible types"),
+                Arguments.of("In Loop", "DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 100 DO s = s + ((i * i) - i); i = i + 1; END RETURN s; END", "323400")
+        );
+    }
+
+    @Test
+    void testTaggedObjects() {
+        Environment.PlcObject small = Environment.createInteger(123456789012L);
+        Assertions.assertTrue(small.isSmallInteger());
+        Assertions.assertEquals(123456789012L, small.getLong());
+        Assertions.assertEquals(BigInteger.valueOf(123456789012L), small.getValue());
+        Assertions.assertSame(small.getValue(), small.getValue());
+        Environment.PlcObject big = Environment.create(BigInteger.ONE.shiftLeft(70));
+        Assertions.assertFalse(big.isSmallInteger());
+        Assertions.assertTrue(Environment.create(BigInteger.valueOf(Long.MIN_VALUE)).isSmallInteger());
+    }
+
+    /**
+     * Runs {@code source} both with and without operators specialized on the
+     * analyzed types, expecting what it printed followed by its result, or
+     * {@code error: } and the message.
+     */
+    static void test(String source, String expected) {
+        Assertions.assertEquals(expected, run(source, false), "generic operators");
+        Assertions.assertEquals(expected, run(source, true), "typed operators");
+    }
+
+    private static String run(String source, boolean typed) {
+        Ast.Source ast = analyze(source);
+        StringWriter writer = new StringWriter();
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(writer));
+        interpreter.setTyped(typed);
+        String output;
+        try {
+            output = String.valueOf(interpreter.visit(ast).getValue());
+        } catch (RuntimeException e) {
+            output = "error: " + e.getMessage();
+        }
+        return writer.toString().replace(System.lineSeparator(), "\n") + output;
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+}
@@ -0,0 +1,888 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An SSA intermediate representation of an analyzed {@link Ast.Source}, built
+ * by the {@link IrBuilder}. Every method becomes a {@link Function}, a control
+ * flow graph of {@link Block}s whose instructions each define one typed
+ * {@link Value}. Locals only exist as values: where control flow merges, a
+ * {@link Phi} picks the value from the predecessor that was taken. Fields are
+ * memory, read and written with {@link Load} and {@link Store}.
+ * <p>
+ * Passes over the IR go through a {@link PassManager}, and the
+ * {@link IrInterpreter} and {@link IrGenerator} lower it to execution and
+ * Java source respectively.
+ */
+public final class Ir {
+
+    private Ir() {}
+
+    public static final class Program {
+
+        private final List<Global> globals;
+        private final Function initializer;
+        private final List<Function> functions;
+
+        public Program(List<Global> globals, Function initializer, List<Function> functions) {
+            this.globals = globals;
+            this.initializer = initializer;
+            this.functions = functions;
+        }
+
+        public List<Global> getGlobals() {
+            return globals;
+        }
+
+        /**
+         * Returns the function that initializes the fields, in order.
+         */
+        public Function getInitializer() {
+            return initializer;
+        }
+
+        public List<Function> getFunctions() {
+            return functions;
+        }
+
+        public Function getFunction(String name, int arity) {
+            for (Function function : functions) {
+                if (function.getName().equals(name) && function.getParameterTypes().size() == arity) {
+                    return function;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            for (Global global : globals) {
+                builder.append("global ").append(global.getName()).append(": ").append(global.getType().getName()).append("\n");
+            }
+            builder.append(initializer);
+            functions.forEach(builder::append);
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Global {
+
+        private final String name;
+        private final Environment.Type type;
+
+        public Global(String name, Environment.Type type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Environment.Type getType() {
+            return type;
+        }
+
+    }
+
+    public static final class Function {
+
+        private final String name;
+        private final List<Environment.Type> parameterTypes;
+        private final Environment.Type returnType;
+        private final List<Block> blocks = new ArrayList<>();
+        private int values = 0;
+        private int blockIds = 0;
+
+        public Function(String name, List<Environment.Type> parameterTypes, Environment.Type returnType) {
+            this.name = name;
+            this.parameterTypes = parameterTypes;
+            this.returnType = returnType;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Environment.Type> getParameterTypes() {
+            return parameterTypes;
+        }
+
+        public Environment.Type getReturnType() {
+            return returnType;
+        }
+
+        /**
+         * Returns the blocks, the entry block first.
+         */
+        public List<Block> getBlocks() {
+            return blocks;
+        }
+
+        public Block getEntry() {
+            return blocks.get(0);
+        }
+
+        public Block newBlock() {
+            Block block = new Block(blockIds++);
+            blocks.add(block);
+            return block;
+        }
+
+        /**
+         * Returns the number of value ids handed out, which bounds every id.
+         */
+        public int getValueCount() {
+            return values;
+        }
+
+        /**
+         * Gives {@code value} the next id and returns it.
+         */
+        public <T extends Value> T number(T value) {
+            value.id = values++;
+            return value;
+        }
+
+        /**
+         * Makes every instruction and terminator that uses {@code value} use
+         * {@code replacement} instead.
+         */
+        public void replaceAllUses(Value value, Value replacement) {
+            for (Block block : blocks) {
+                block.getPhis().forEach(phi -> phi.replaceOperand(value, replacement));
+                block.getInstructions().forEach(instruction -> instruction.replaceOperand(value, replacement));
+                if (block.getTerminator() != null) {
+                    block.getTerminator().replaceOperand(value, replacement);
+                }
+            }
+        }
+
+        /**
+         * Returns whether any instruction or terminator uses {@code value}.
+         */
+        public boolean isUsed(Value value) {
+            for (Block block : blocks) {
+                for (Phi phi : block.getPhis()) {
+                    if (phi != value && phi.getOperands().contains(value)) {
+                        return true;
+                    }
+                }
+                for (Instruction instruction : block.getInstructions()) {
+                    if (instruction.getOperands().contains(value)) {
+                        return true;
+                    }
+                }
+                if (block.getTerminator() != null && block.getTerminator().getOperands().contains(value)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("function ").append(name).append("(");
+            for (int i = 0; i < parameterTypes.size(); i++) {
+                builder.append(i == 0 ? "" : ", ").append(parameterTypes.get(i).getName());
+            }
+            builder.append("): ").append(returnType.getName()).append("\n");
+            blocks.forEach(builder::append);
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Block {
+
+        private final int id;
+        private final List<Block> predecessors = new ArrayList<>();
+        private final List<Phi> phis = new ArrayList<>();
+        private final List<Instruction> instructions = new ArrayList<>();
+        private Terminator terminator = null;
+        private boolean loopHeader = false;
+
+        private Block(int id) {
+            this.id = id;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Returns the predecessors, in the order the operands of the phis
+         * refer to them.
+         */
+        public List<Block> getPredecessors() {
+            return predecessors;
+        }
+
+        public List<Phi> getPhis() {
+            return phis;
+        }
+
+        public List<Instruction> getInstructions() {
+            return instructions;
+        }
+
+        public Terminator getTerminator() {
+            return terminator;
+        }
+
+        /**
+         * Ends the block with {@code terminator}, replacing (and unlinking) a
+         * previous one. Edges both have are kept, with their phi operands.
+         */
+        public void setTerminator(Terminator terminator) {
+            List<Block> previous = this.terminator != null ? this.terminator.getSuccessors() : Collections.emptyList();
+            for (Block successor : previous) {
+                if (!terminator.getSuccessors().contains(successor)) {
+                    successor.removePredecessor(this);
+                }
+            }
+            this.terminator = terminator;
+            for (Block successor : terminator.getSuccessors()) {
+                if (!previous.contains(successor)) {
+                    successor.predecessors.add(this);
+                }
+            }
+        }
+
+        /**
+         * Removes the edge from {@code predecessor}, along with the phi
+         * operands for it.
+         */
+        public void removePredecessor(Block predecessor) {
+            int index = predecessors.indexOf(predecessor);
+            predecessors.remove(index);
+            phis.forEach(phi -> phi.operands.remove(index));
+        }
+
+        /**
+         * Returns whether the block is the target of a loop's back edge, where
+         * each iteration starts.
+         */
+        public boolean isLoopHeader() {
+            return loopHeader;
+        }
+
+        public void setLoopHeader(boolean loopHeader) {
+            this.loopHeader = loopHeader;
+        }
+
+        public <T extends Instruction> T add(T instruction) {
+            instructions.add(instruction);
+            return instruction;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder("  b").append(id).append(":");
+            for (Block predecessor : predecessors) {
+                builder.append(predecessor == predecessors.get(0) ? " <- b" : ", b").append(predecessor.getId());
+            }
+            builder.append(loopHeader ? " (loop)\n" : "\n");
+            phis.forEach(phi -> builder.append("    ").append(phi.define()).append("\n"));
+            instructions.forEach(instruction -> builder.append("    ").append(instruction.define()).append("\n"));
+            builder.append("    ").append(terminator).append("\n");
+            return builder.toString();
+        }
+
+    }
+
+    /**
+     * Something an instruction can use: the result of an instruction or phi.
+     */
+    public abstract static class Value {
+
+        int id = -1;
+        private final Environment.Type type;
+        final List<Value> operands;
+
+        private Value(Environment.Type type, Value... operands) {
+            this.type = type;
+            this.operands = new ArrayList<>(Arrays.asList(operands));
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public Environment.Type getType() {
+            return type;
+        }
+
+        public List<Value> getOperands() {
+            return Collections.unmodifiableList(operands);
+        }
+
+        void replaceOperand(Value value, Value replacement) {
+            operands.replaceAll(operand -> operand == value ? replacement : operand);
+        }
+
+        String define() {
+            return this + ": " + type.getName() + " = " + describe();
+        }
+
+        abstract String describe();
+
+        @Override
+        public String toString() {
+            return "v" + id;
+        }
+
+    }
+
+    public abstract static class Instruction extends Value {
+
+        private Instruction(Environment.Type type, Value... operands) {
+            super(type, operands);
+        }
+
+        /**
+         * Returns whether the instruction does anything but compute its value
+         * (including failing), so it can't be removed if that is unused.
+         */
+        public abstract boolean hasEffect();
+
+    }
+
+    public static final class Phi extends Value {
+
+        private final Block block;
+
+        public Phi(Block block, Environment.Type type) {
+            super(type);
+            this.block = block;
+        }
+
+        public Block getBlock() {
+            return block;
+        }
+
+        public void addOperand(Value value) {
+            operands.add(value);
+        }
+
+        @Override
+        String describe() {
+            StringBuilder builder = new StringBuilder("phi");
+            for (int i = 0; i < operands.size(); i++) {
+                builder.append(i == 0 ? " " : ", ").append("[b").append(block.getPredecessors().get(i).getId()).append(": ").append(operands.get(i)).append("]");
+            }
+            return builder.toString();
+        }
+
+    }
+
+    public static final class Constant extends Instruction {
+
+        private final Object literal;
+        private Environment.PlcObject object = null;
+
+        public Constant(Object literal, Environment.Type type) {
+            super(type);
+            this.literal = literal;
+        }
+
+        public Object getLiteral() {
+            return literal;
+        }
+
+        public Environment.PlcObject getObject() {
+            if (object == null) {
+                object = literal == null ? Environment.NIL : Environment.create(literal);
+            }
+            return object;
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return "const " + (literal instanceof String ? "\"" + literal + "\"" : literal instanceof Character ? "'" + literal + "'" : String.valueOf(literal));
+        }
+
+    }
+
+    public static final class Parameter extends Instruction {
+
+        private final int index;
+
+        public Parameter(int index, Environment.Type type) {
+            super(type);
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return "param " + index;
+        }
+
+    }
+
+    /**
+     * A binary operator other than AND/OR, which become control flow.
+     */
+    public static final class Binary extends Instruction {
+
+        private final String operator;
+
+        public Binary(String operator, Value left, Value right, Environment.Type type) {
+            super(type, left, right);
+            this.operator = operator;
+        }
+
+        public String getOperator() {
+            return operator;
+        }
+
+        public Value getLeft() {
+            return operands.get(0);
+        }
+
+        public Value getRight() {
+            return operands.get(1);
+        }
+
+        /**
+         * Returns whether the operator can fail: a division, a comparison of
+         * values that don't both have the same Integer, Decimal, Character or
+         * String type, or any other operator than {@code ==}/{@code !=} on a
+         * value that may be NIL.
+         */
+        @Override
+        public boolean hasEffect() {
+            if (operator.equals("/")) {
+                return true;
+            } else if (operator.equals("==") || operator.equals("!=")) {
+                return false;
+            } else if (!isValue(getLeft()) || !isValue(getRight())) {
+                return true;
+            } else if (operator.equals("<") || operator.equals("<=") || operator.equals(">") || operator.equals(">=")) {
+                Environment.Type left = getLeft().getType();
+                return left != getRight().getType() || left != Environment.Type.INTEGER && left != Environment.Type.DECIMAL
+                        && left != Environment.Type.CHARACTER && left != Environment.Type.STRING;
+            }
+            return false;
+        }
+
+        /**
+         * Returns whether {@code value} is never NIL: a constant other than
+         * NIL, or a binary operator, which fails rather than produce NIL.
+         */
+        private static boolean isValue(Value value) {
+            return value instanceof Constant && ((Constant) value).getLiteral() != null || value instanceof Binary;
+        }
+
+        @Override
+        String describe() {
+            return getLeft() + " " + operator + " " + getRight();
+        }
+
+    }
+
+    public static final class Load extends Instruction {
+
+        private final String name;
+
+        public Load(String name, Environment.Type type) {
+            super(type);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return "load " + name;
+        }
+
+    }
+
+    public static final class Store extends Instruction {
+
+        private final String name;
+
+        public Store(String name, Value value) {
+            super(Environment.Type.NIL, value);
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "store " + name + ", " + getValue();
+        }
+
+    }
+
+    public static final class GetField extends Instruction {
+
+        private final String name;
+
+        public GetField(Value receiver, String name, Environment.Type type) {
+            super(type, receiver);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "getfield " + getReceiver() + "." + name;
+        }
+
+    }
+
+    public static final class SetField extends Instruction {
+
+        private final String name;
+
+        public SetField(Value receiver, String name, Value value) {
+            super(Environment.Type.NIL, receiver, value);
+            this.name = name;
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Value getValue() {
+            return operands.get(1);
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "setfield " + getReceiver() + "." + name + ", " + getValue();
+        }
+
+    }
+
+    /**
+     * A call to a function without a receiver: a DEF method of the program
+     * (the target, once the whole program is built) or a host function.
+     */
+    public static final class Call extends Instruction {
+
+        private final String name;
+        private final Environment.Function function;
+        private Function target = null;
+
+        public Call(String name, List<Value> arguments, Environment.Function function, Environment.Type type) {
+            super(type, arguments.toArray(new Value[0]));
+            this.name = name;
+            this.function = function;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Value> getArguments() {
+            return getOperands();
+        }
+
+        /**
+         * Returns the function the {@link Analyzer} resolved the call to, or
+         * null if it wasn't analyzed.
+         */
+        public Environment.Function getFunction() {
+            return function;
+        }
+
+        /**
+         * Returns the called method, or null if it's a host function.
+         */
+        public Function getTarget() {
+            return target;
+        }
+
+        public void setTarget(Function target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "call " + name + operands.toString().replace('[', '(').replace(']', ')');
+        }
+
+    }
+
+    public static final class MethodCall extends Instruction {
+
+        private final String name;
+
+        public MethodCall(Value receiver, String name, List<Value> arguments, Environment.Type type) {
+            super(type, receiver);
+            this.name = name;
+            operands.addAll(arguments);
+        }
+
+        public Value getReceiver() {
+            return operands.get(0);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<Value> getArguments() {
+            return getOperands().subList(1, operands.size());
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "call " + getReceiver() + "." + name + getArguments().toString().replace('[', '(').replace(']', ')');
+        }
+
+    }
+
+    /**
+     * Starts iterating over an iterable for a FOR loop, producing an iterator
+     * that {@link HasNext} and {@link Next} use.
+     */
+    public static final class Iterate extends Instruction {
+
+        public Iterate(Value iterable) {
+            super(Environment.Type.ANY, iterable);
+        }
+
+        public Value getIterable() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "iterate " + getIterable();
+        }
+
+    }
+
+    public static final class HasNext extends Instruction {
+
+        public HasNext(Value iterator) {
+            super(Environment.Type.BOOLEAN, iterator);
+        }
+
+        public Value getIterator() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return false;
+        }
+
+        @Override
+        String describe() {
+            return "hasnext " + getIterator();
+        }
+
+    }
+
+    public static final class Next extends Instruction {
+
+        public Next(Value iterator, Environment.Type type) {
+            super(type, iterator);
+        }
+
+        public Value getIterator() {
+            return operands.get(0);
+        }
+
+        @Override
+        public boolean hasEffect() {
+            return true;
+        }
+
+        @Override
+        String describe() {
+            return "next " + getIterator();
+        }
+
+    }
+
+    public abstract static class Terminator {
+
+        final List<Value> operands;
+
+        private Terminator(Value... operands) {
+            this.operands = new ArrayList<>(Arrays.asList(operands));
+        }
+
+        public List<Value> getOperands() {
+            return Collections.unmodifiableList(operands);
+        }
+
+        public abstract List<Block> getSuccessors();
+
+        void replaceOperand(Value value, Value replacement) {
+            operands.replaceAll(operand -> operand == value ? replacement : operand);
+        }
+
+    }
+
+    public static final class Jump extends Terminator {
+
+        private final Block target;
+
+        public Jump(Block target) {
+            this.target = target;
+        }
+
+        public Block getTarget() {
+            return target;
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return Collections.singletonList(target);
+        }
+
+        @Override
+        public String toString() {
+            return "jump b" + target.getId();
+        }
+
+    }
+
+    public static final class Branch extends Terminator {
+
+        private final Block then;
+        private final Block otherwise;
+
+        public Branch(Value condition, Block then, Block otherwise) {
+            super(condition);
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+
+        public Value getCondition() {
+            return operands.get(0);
+        }
+
+        public Block getThen() {
+            return then;
+        }
+
+        public Block getElse() {
+            return otherwise;
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return then == otherwise ? Collections.singletonList(then) : Arrays.asList(then, otherwise);
+        }
+
+        @Override
+        public String toString() {
+            return "branch " + getCondition() + ", b" + then.getId() + ", b" + otherwise.getId();
+        }
+
+    }
+
+    public static final class Return extends Terminator {
+
+        public Return(Value value) {
+            super(value);
+        }
+
+        public Value getValue() {
+            return operands.get(0);
+        }
+
+        @Override
+        public List<Block> getSuccessors() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return "return " + getValue();
+        }
+
+    }
+
+    /**
+     * Returns whether {@code literal} is an Integer that fits in an
+     * {@code int}, which is how the generated Java stores Integers.
+     */
+    static boolean fitsInt(Object literal) {
+        return !(literal instanceof BigInteger) || ((BigInteger) literal).bitLength() < Integer.SIZE;
+    }
+
+}
@@ -0,0 +1,456 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds the SSA {@link Ir} of an analyzed {@link Ast.Source}. Locals are
+ * resolved by lexical scope like the {@link Resolver} does, and are turned
+ * into SSA values while the control flow graph is built, following Braun et
+ * al.'s construction: a block is sealed once all its predecessors are known,
+ * reads in unsealed blocks get placeholder phis that are completed when it
+ * is, and phis whose operands are all the same value are removed again.
+ * <p>
+ * AND/OR become branches merged by a phi, so the right operand is only
+ * evaluated when it decides the result, and FOR loops become explicit
+ * iterator calls. Types come from the {@link Analyzer}; without them
+ * everything is {@code Any}.
+ */
+public final class IrBuilder implements Ast.Visitor<Ir.Value> {
+
+    private final Map<Ir.Block, Map<Object, Ir.Value>> definitions = new HashMap<>();
+    private final Map<Ir.Block, Map<Object, Ir.Phi>> incomplete = new HashMap<>();
+    private final Set<Ir.Block> sealed = new HashSet<>();
+    private final Map<Object, Environment.Type> types = new IdentityHashMap<>();
+    private final Deque<Map<String, Object>> scopes = new ArrayDeque<>();
+    private final Map<String, Environment.Type> globals = new HashMap<>();
+
+    private Ir.Function function = null;
+    private Ir.Block block = null;
+
+    /**
+     * Builds the whole program. Calls to its methods are linked to their
+     * functions, calls to anything else are left to the host.
+     */
+    public Ir.Program build(Ast.Source ast) {
+        List<Ir.Global> fields = new ArrayList<>();
+        Ir.Function initializer = begin("<init>", new ArrayList<>(), Environment.Type.NIL);
+        for (Ast.Field field : ast.getFields()) {
+            Ir.Value value = field.getValue().isPresent() ? visit(field.getValue().get()) : constant(null, Environment.Type.NIL);
+            Environment.Type type = typeOf(field);
+            globals.put(field.getName(), type);
+            fields.add(new Ir.Global(field.getName(), type));
+            block.add(function.number(new Ir.Store(field.getName(), value)));
+        }
+        end();
+        List<Ir.Function> functions = new ArrayList<>();
+        ast.getMethods().forEach(method -> functions.add(build(method)));
+        Ir.Program program = new Ir.Program(fields, initializer, functions);
+        for (Ir.Function function : functions) {
+            for (Ir.Block block : function.getBlocks()) {
+                for (Ir.Instruction instruction : block.getInstructions()) {
+                    if (instruction instanceof Ir.Call) {
+                        Ir.Call call = (Ir.Call) instruction;
+                        call.setTarget(program.getFunction(call.getName(), call.getArguments().size()));
+                    }
+                }
+            }
+        }
+        return program;
+    }
+
+    public Ir.Function build(Ast.Method ast) {
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        Environment.Type returnType = Environment.Type.ANY;
+        try {
+            parameterTypes.addAll(ast.getFunction().getParameterTypes());
+            returnType = ast.getFunction().getReturnType();
+        } catch (IllegalStateException e) {
+            ast.getParameters().forEach(parameter -> parameterTypes.add(Environment.Type.ANY));
+        }
+        begin(ast.getName(), parameterTypes, returnType);
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            Object variable = declare(ast.getParameters().get(i), parameterTypes.get(i));
+            write(variable, block, block.add(function.number(new Ir.Parameter(i, parameterTypes.get(i)))));
+        }
+        ast.getStatements().forEach(this::visit);
+        return end();
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Source ast) {
+        throw new UnsupportedOperationException("Use build(Ast.Source) for a whole program.");
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Field ast) {
+        throw new UnsupportedOperationException("Fields are built with the program.");
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Method ast) {
+        throw new UnsupportedOperationException("Use build(Ast.Method) for a method.");
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.Declaration ast) {
+        Environment.Type type = typeOf(ast);
+        Ir.Value value = ast.getValue().isPresent() ? visit(ast.getValue().get()) : constant(null, Environment.Type.NIL);
+        write(declare(ast.getName(), type), block, value);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.Assignment ast) {
+        Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+        if (receiver.getReceiver().isPresent()) {
+            Ir.Value object = visit(receiver.getReceiver().get());
+            Ir.Value value = visit(ast.getValue());
+            block.add(function.number(new Ir.SetField(object, receiver.getName(), value)));
+        } else {
+            Object variable = lookup(receiver.getName());
+            Ir.Value value = visit(ast.getValue());
+            if (variable != null) {
+                write(variable, block, value);
+            } else {
+                block.add(function.number(new Ir.Store(receiver.getName(), value)));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.If ast) {
+        Ir.Value condition = visit(ast.getCondition());
+        Ir.Block then = function.newBlock();
+        Ir.Block otherwise = function.newBlock();
+        Ir.Block merge = function.newBlock();
+        block.setTerminator(new Ir.Branch(condition, then, otherwise));
+        seal(then);
+        seal(otherwise);
+        branch(then, ast.getThenStatements(), merge);
+        branch(otherwise, ast.getElseStatements(), merge);
+        seal(merge);
+        block = merge;
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.For ast) {
+        Ir.Value iterator = block.add(function.number(new Ir.Iterate(visit(ast.getValue()))));
+        Ir.Block header = function.newBlock();
+        Ir.Block body = function.newBlock();
+        Ir.Block exit = function.newBlock();
+        header.setLoopHeader(true);
+        block.setTerminator(new Ir.Jump(header));
+        block = header;
+        header.setTerminator(new Ir.Branch(header.add(function.number(new Ir.HasNext(iterator))), body, exit));
+        seal(body);
+        block = body;
+        scopes.push(new HashMap<>());
+        Environment.Type type = isIntegerIterable(ast.getValue()) ? Environment.Type.INTEGER : Environment.Type.ANY;
+        write(declare(ast.getName(), type), block, block.add(function.number(new Ir.Next(iterator, type))));
+        ast.getStatements().forEach(this::visit);
+        scopes.pop();
+        block.setTerminator(new Ir.Jump(header));
+        seal(header);
+        seal(exit);
+        block = exit;
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.While ast) {
+        Ir.Block header = function.newBlock();
+        header.setLoopHeader(true);
+        block.setTerminator(new Ir.Jump(header));
+        block = header;
+        Ir.Value condition = visit(ast.getCondition());
+        Ir.Block body = function.newBlock();
+        Ir.Block exit = function.newBlock();
+        block.setTerminator(new Ir.Branch(condition, body, exit));
+        seal(body);
+        block = body;
+        scopes.push(new HashMap<>());
+        ast.getStatements().forEach(this::visit);
+        scopes.pop();
+        block.setTerminator(new Ir.Jump(header));
+        seal(header);
+        seal(exit);
+        block = exit;
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Stmt.Return ast) {
+        block.setTerminator(new Ir.Return(visit(ast.getValue())));
+        // anything after the RETURN is unreachable, it goes in a block without
+        // predecessors that a pass can drop
+        block = function.newBlock();
+        seal(block);
+        return null;
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expr.Literal ast) {
+        return constant(ast.getLiteral(), typeOf(ast));
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expr.Group ast) {
+        return visit(ast.getExpression());
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expr.Binary ast) {
+        Ir.Value left = visit(ast.getLeft());
+        if (ast.getOperator().equals("AND") || ast.getOperator().equals("OR")) {
+            // the left operand decides unless it is TRUE for AND, FALSE for OR
+            boolean and = ast.getOperator().equals("AND");
+            Ir.Value decided = constant(!and, Environment.Type.BOOLEAN);
+            Ir.Block right = function.newBlock();
+            Ir.Block merge = function.newBlock();
+            Ir.Block start = block;
+            start.setTerminator(and ? new Ir.Branch(left, right, merge) : new Ir.Branch(left, merge, right));
+            seal(right);
+            block = right;
+            Ir.Value value = visit(ast.getRight());
+            block.setTerminator(new Ir.Jump(merge));
+            seal(merge);
+            Ir.Phi phi = function.number(new Ir.Phi(merge, Environment.Type.BOOLEAN));
+            for (Ir.Block predecessor : merge.getPredecessors()) {
+                phi.addOperand(predecessor == start ? decided : value);
+            }
+            merge.getPhis().add(phi);
+            block = merge;
+            return phi;
+        }
+        Ir.Value right = visit(ast.getRight());
+        return block.add(function.number(new Ir.Binary(ast.getOperator(), left, right, typeOf(ast))));
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expr.Access ast) {
+        if (ast.getReceiver().isPresent()) {
+            Ir.Value receiver = visit(ast.getReceiver().get());
+            return block.add(function.number(new Ir.GetField(receiver, ast.getName(), typeOf(ast))));
+        }
+        Object variable = lookup(ast.getName());
+        if (variable != null) {
+            return read(variable, block);
+        }
+        return block.add(function.number(new Ir.Load(ast.getName(), globals.getOrDefault(ast.getName(), typeOf(ast)))));
+    }
+
+    @Override
+    public Ir.Value visit(Ast.Expr.Function ast) {
+        // like the Interpreter, arguments are evaluated before the receiver
+        List<Ir.Value> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(visit(argument)));
+        Environment.Type type = typeOf(ast);
+        if (ast.getReceiver().isPresent()) {
+            Ir.Value receiver = visit(ast.getReceiver().get());
+            return block.add(function.number(new Ir.MethodCall(receiver, ast.getName(), arguments, type)));
+        }
+        Environment.Function called = null;
+        try {
+            called = ast.getFunction();
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+        return block.add(function.number(new Ir.Call(ast.getName(), arguments, called, type)));
+    }
+
+    private Ir.Function begin(String name, List<Environment.Type> parameterTypes, Environment.Type returnType) {
+        function = new Ir.Function(name, parameterTypes, returnType);
+        definitions.clear();
+        incomplete.clear();
+        sealed.clear();
+        types.clear();
+        scopes.clear();
+        scopes.push(new HashMap<>());
+        block = function.newBlock();
+        seal(block);
+        return function;
+    }
+
+    /**
+     * Finishes the current function, returning NIL from the end of a method
+     * that doesn't return on every path.
+     */
+    private Ir.Function end() {
+        if (block.getTerminator() == null) {
+            block.setTerminator(new Ir.Return(constant(null, Environment.Type.NIL)));
+        }
+        return function;
+    }
+
+    private void branch(Ir.Block start, List<Ast.Stmt> statements, Ir.Block merge) {
+        block = start;
+        scopes.push(new HashMap<>());
+        statements.forEach(this::visit);
+        scopes.pop();
+        block.setTerminator(new Ir.Jump(merge));
+    }
+
+    private Ir.Constant constant(Object literal, Environment.Type type) {
+        return block.add(function.number(new Ir.Constant(literal, type)));
+    }
+
+    /**
+     * Creates a NIL for a variable without a definition, at the start of
+     * {@code block} since instructions there may already use it.
+     */
+    private Ir.Value undefined(Ir.Block block) {
+        Ir.Constant constant = function.number(new Ir.Constant(null, Environment.Type.NIL));
+        block.getInstructions().add(0, constant);
+        return constant;
+    }
+
+    private Object declare(String name, Environment.Type type) {
+        Object variable = new Object();
+        scopes.peek().put(name, variable);
+        types.put(variable, type);
+        return variable;
+    }
+
+    private Object lookup(String name) {
+        for (Map<String, Object> scope : scopes) {
+            if (scope.containsKey(name)) {
+                return scope.get(name);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * SSA construction, see the class comment.
+     */
+
+    private void write(Object variable, Ir.Block block, Ir.Value value) {
+        definitions.computeIfAbsent(block, b -> new IdentityHashMap<>()).put(variable, value);
+    }
+
+    private Ir.Value read(Object variable, Ir.Block block) {
+        Map<Object, Ir.Value> values = definitions.get(block);
+        if (values != null && values.containsKey(variable)) {
+            return values.get(variable);
+        }
+        Ir.Value value;
+        if (!sealed.contains(block)) {
+            Ir.Phi phi = phi(variable, block);
+            incomplete.computeIfAbsent(block, b -> new IdentityHashMap<>()).put(variable, phi);
+            value = phi;
+        } else if (block.getPredecessors().size() == 1) {
+            value = read(variable, block.getPredecessors().get(0));
+        } else if (block.getPredecessors().isEmpty()) {
+            // only in unreachable code
+            value = undefined(block);
+        } else {
+            Ir.Phi phi = phi(variable, block);
+            write(variable, block, phi);
+            value = complete(variable, phi);
+        }
+        write(variable, block, value);
+        return value;
+    }
+
+    private Ir.Phi phi(Object variable, Ir.Block block) {
+        Ir.Phi phi = function.number(new Ir.Phi(block, types.getOrDefault(variable, Environment.Type.ANY)));
+        block.getPhis().add(phi);
+        return phi;
+    }
+
+    private Ir.Value complete(Object variable, Ir.Phi phi) {
+        for (Ir.Block predecessor : phi.getBlock().getPredecessors()) {
+            phi.addOperand(read(variable, predecessor));
+        }
+        return removeTrivial(phi);
+    }
+
+    private Ir.Value removeTrivial(Ir.Phi phi) {
+        Ir.Value same = null;
+        for (Ir.Value operand : phi.getOperands()) {
+            if (operand == same || operand == phi) {
+                continue;
+            } else if (same != null) {
+                return phi;
+            }
+            same = operand;
+        }
+        if (same == null) {
+            same = undefined(phi.getBlock());
+        }
+        List<Ir.Phi> users = new ArrayList<>();
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Phi user : block.getPhis()) {
+                if (user != phi && user.getOperands().contains(phi)) {
+                    users.add(user);
+                }
+            }
+        }
+        phi.getBlock().getPhis().remove(phi);
+        function.replaceAllUses(phi, same);
+        for (Map<Object, Ir.Value> values : definitions.values()) {
+            for (Map.Entry<Object, Ir.Value> entry : values.entrySet()) {
+                if (entry.getValue() == phi) {
+                    entry.setValue(same);
+                }
+            }
+        }
+        for (Ir.Phi user : users) {
+            removeTrivial(user);
+        }
+        return same;
+    }
+
+    private void seal(Ir.Block block) {
+        Map<Object, Ir.Phi> phis = incomplete.remove(block);
+        if (phis != null) {
+            phis.forEach(this::complete);
+        }
+        sealed.add(block);
+    }
+
+    private static Environment.Type typeOf(Ast.Expr ast) {
+        try {
+            return ast.getType();
+        } catch (IllegalStateException e) {
+            return Environment.Type.ANY;
+        }
+    }
+
+    private static Environment.Type typeOf(Ast.Field ast) {
+        try {
+            return ast.getVariable().getType();
+        } catch (IllegalStateException e) {
+            return Environment.Type.ANY;
+        }
+    }
+
+    private static Environment.Type typeOf(Ast.Stmt.Declaration ast) {
+        try {
+            return ast.getVariable().getType();
+        } catch (IllegalStateException e) {
+            return Environment.Type.ANY;
+        }
+    }
+
+    private static boolean isIntegerIterable(Ast.Expr ast) {
+        return typeOf(ast) == Environment.Type.INTEGER_ITERABLE;
+    }
+
+}
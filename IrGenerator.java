@@ -0,0 +1,331 @@
+package plc.project;
+
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers an {@link Ir.Program} to Java source, as an alternative to the
+ * {@link Generator}. Every function becomes a loop over a {@code switch} on
+ * the current block, with a Java local per SSA value; the phis of a block are
+ * assigned through a second local each, written on the edges into the block
+ * and copied at its start, so they all read their operands first. Fields are
+ * initialized by {@code $init()}, which {@code main} calls before the
+ * program's {@code main()}.
+ */
+public final class IrGenerator {
+
+    private final PrintWriter writer;
+    private final Map<String, Environment.Type> globals = new HashMap<>();
+
+    public IrGenerator(PrintWriter writer) {
+        this.writer = writer;
+    }
+
+    public void generate(Ir.Program program) {
+        line(0, "public class Main {");
+        writer.println();
+        for (Ir.Global global : program.getGlobals()) {
+            globals.put(global.getName(), global.getType());
+            line(1, global.getType().getJvmName(), " ", global.getName(), ";");
+        }
+        if (!program.getGlobals().isEmpty()) {
+            writer.println();
+        }
+        Ir.Function main = program.getFunction("main", 0);
+        String result = main == null ? "0" : isPrimitive(main.getReturnType()) ? "main.main()" : "(Integer) main.main()";
+        line(1, "public static void main(String[] args) {");
+        line(2, "Main main = new Main();");
+        line(2, "main.$init();");
+        line(2, "System.exit(", result, ");");
+        line(1, "}");
+        writer.println();
+        generate(program.getInitializer(), "$init");
+        for (Ir.Function function : program.getFunctions()) {
+            writer.println();
+            generate(function, function.getName());
+        }
+        if (usesRange(program)) {
+            writer.println();
+            line(1, "static Iterable<Integer> range(int start, int end) {");
+            line(2, "return range(start, end, 1);");
+            line(1, "}");
+            writer.println();
+            line(1, "static Iterable<Integer> range(int start, int end, int step) {");
+            line(2, "return () -> java.util.stream.IntStream.iterate(start, i -> step > 0 ? i < end : i > end, i -> i + step).iterator();");
+            line(1, "}");
+        }
+        writer.println();
+        line(0, "}");
+        writer.flush();
+    }
+
+    private void generate(Ir.Function function, String name) {
+        StringBuilder parameters = new StringBuilder();
+        for (int i = 0; i < function.getParameterTypes().size(); i++) {
+            parameters.append(i == 0 ? "" : ", ").append(function.getParameterTypes().get(i).getJvmName()).append(" p").append(i);
+        }
+        line(1, function.getReturnType().getJvmName(), " ", name, "(", parameters, ") {");
+        for (Ir.Block block : function.getBlocks()) {
+            for (Ir.Phi phi : block.getPhis()) {
+                declare(phi, phi.getType().getJvmName());
+                declare(phi + "_in", phi.getType().getJvmName());
+            }
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                declare(instruction.toString(), instruction instanceof Ir.Iterate ? "java.util.Iterator<?>" : instruction.getType().getJvmName());
+            }
+        }
+        line(2, "int block = ", function.getEntry().getId(), ";");
+        line(2, "while (true) {");
+        line(3, "switch (block) {");
+        for (Ir.Block block : function.getBlocks()) {
+            line(4, "case ", block.getId(), ":");
+            for (Ir.Phi phi : block.getPhis()) {
+                line(5, phi, " = ", phi, "_in;");
+            }
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                generate(instruction);
+            }
+            generate(block, function);
+        }
+        line(4, "default:");
+        line(5, "throw new IllegalStateException(\"Unknown block \" + block + \".\");");
+        line(3, "}");
+        line(2, "}");
+        line(1, "}");
+    }
+
+    private void generate(Ir.Instruction instruction) {
+        if (instruction instanceof Ir.Constant) {
+            line(5, instruction, " = ", literal(((Ir.Constant) instruction).getLiteral()), ";");
+        } else if (instruction instanceof Ir.Parameter) {
+            line(5, instruction, " = p", ((Ir.Parameter) instruction).getIndex(), ";");
+        } else if (instruction instanceof Ir.Binary) {
+            line(5, instruction, " = ", binary((Ir.Binary) instruction), ";");
+        } else if (instruction instanceof Ir.Load) {
+            line(5, instruction, " = this.", ((Ir.Load) instruction).getName(), ";");
+        } else if (instruction instanceof Ir.Store) {
+            Ir.Store store = (Ir.Store) instruction;
+            line(5, "this.", store.getName(), " = ", convert(store.getValue(), globals.getOrDefault(store.getName(), Environment.Type.ANY)), ";");
+        } else if (instruction instanceof Ir.GetField) {
+            Ir.GetField get = (Ir.GetField) instruction;
+            line(5, instruction, " = ", receiver(get.getReceiver()), ".", field(get.getReceiver(), get.getName()), ";");
+        } else if (instruction instanceof Ir.SetField) {
+            Ir.SetField set = (Ir.SetField) instruction;
+            line(5, receiver(set.getReceiver()), ".", field(set.getReceiver(), set.getName()), " = ", set.getValue(), ";");
+        } else if (instruction instanceof Ir.Call) {
+            Ir.Call call = (Ir.Call) instruction;
+            List<Environment.Type> types = call.getTarget() != null ? call.getTarget().getParameterTypes() : call.getFunction() != null ? call.getFunction().getParameterTypes() : null;
+            String name = call.getTarget() != null ? "this." + call.getName() : call.getFunction() != null ? call.getFunction().getJvmName() : call.getName();
+            String expression = name + "(" + arguments(call.getArguments(), types) + ")";
+            if (call.getTarget() == null && call.getType() == Environment.Type.NIL) {
+                // host functions like print are void in Java
+                line(5, expression, ";");
+            } else {
+                line(5, instruction, " = ", expression, ";");
+            }
+        } else if (instruction instanceof Ir.MethodCall) {
+            Ir.MethodCall call = (Ir.MethodCall) instruction;
+            String expression = receiver(call.getReceiver()) + "." + method(call) + "(" + arguments(call.getArguments(), null) + ")";
+            line(5, call.getType() == Environment.Type.NIL ? "" : instruction + " = ", expression, ";");
+        } else if (instruction instanceof Ir.Iterate) {
+            line(5, instruction, " = ((Iterable<?>) ", ((Ir.Iterate) instruction).getIterable(), ").iterator();");
+        } else if (instruction instanceof Ir.HasNext) {
+            line(5, instruction, " = ", ((Ir.HasNext) instruction).getIterator(), ".hasNext();");
+        } else if (instruction instanceof Ir.Next) {
+            Ir.Next next = (Ir.Next) instruction;
+            String cast = next.getType() == Environment.Type.ANY ? "" : "(" + box(next.getType().getJvmName()) + ") ";
+            line(5, instruction, " = ", cast, next.getIterator(), ".next();");
+        } else {
+            throw new UnsupportedOperationException("Unknown instruction " + instruction.getClass().getSimpleName() + ".");
+        }
+    }
+
+    private void generate(Ir.Block block, Ir.Function function) {
+        Ir.Terminator terminator = block.getTerminator();
+        if (terminator instanceof Ir.Jump) {
+            edge(5, block, ((Ir.Jump) terminator).getTarget());
+        } else if (terminator instanceof Ir.Branch) {
+            Ir.Branch branch = (Ir.Branch) terminator;
+            line(5, "if (", branch.getCondition(), ") {");
+            edge(6, block, branch.getThen());
+            line(5, "} else {");
+            edge(6, block, branch.getElse());
+            line(5, "}");
+        } else {
+            line(5, "return ", convert(((Ir.Return) terminator).getValue(), function.getReturnType()), ";");
+            return;
+        }
+        line(5, "continue;");
+    }
+
+    /**
+     * Passes the phi operands for the edge from {@code from} to {@code to},
+     * and continues at {@code to}.
+     */
+    private void edge(int indent, Ir.Block from, Ir.Block to) {
+        int index = to.getPredecessors().indexOf(from);
+        for (Ir.Phi phi : to.getPhis()) {
+            line(indent, phi, "_in = ", convert(phi.getOperands().get(index), phi.getType()), ";");
+        }
+        line(indent, "block = ", to.getId(), ";");
+    }
+
+    private String binary(Ir.Binary binary) {
+        Ir.Value left = binary.getLeft();
+        Ir.Value right = binary.getRight();
+        boolean primitive = isPrimitive(left.getType()) && isPrimitive(right.getType());
+        switch (binary.getOperator()) {
+            case "==":
+                return primitive ? left + " == " + right : "java.util.Objects.equals(" + left + ", " + right + ")";
+            case "!=":
+                return primitive ? left + " != " + right : "!java.util.Objects.equals(" + left + ", " + right + ")";
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+                return primitive ? left + " " + binary.getOperator() + " " + right : "((Comparable) " + left + ").compareTo(" + right + ") " + binary.getOperator() + " 0";
+            default:
+                return operand(left, binary.getType()) + " " + binary.getOperator() + " " + operand(right, binary.getType());
+        }
+    }
+
+    /**
+     * Returns an arithmetic operand, unboxed if the result is primitive.
+     */
+    private static String operand(Ir.Value value, Environment.Type type) {
+        if (isPrimitive(type) && !isPrimitive(value.getType())) {
+            return "((" + box(type.getJvmName()) + ") " + value + ")";
+        }
+        return value.toString();
+    }
+
+    private static String arguments(List<Ir.Value> arguments, List<Environment.Type> types) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < arguments.size(); i++) {
+            builder.append(i == 0 ? "" : ", ").append(types == null ? arguments.get(i).toString() : convert(arguments.get(i), types.get(i)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns {@code value} as the Java type of {@code type}, e.g. unboxing
+     * an {@code Any} into an {@code int}. NIL becomes the default value.
+     */
+    private static String convert(Ir.Value value, Environment.Type type) {
+        String jvmName = type.getJvmName();
+        if (value.getType().getJvmName().equals(jvmName) || type == Environment.Type.ANY) {
+            return value.toString();
+        } else if (value.getType() == Environment.Type.NIL) {
+            return initial(jvmName);
+        } else if (isPrimitive(type)) {
+            return isPrimitive(value.getType()) ? value.toString() : "(" + box(jvmName) + ") " + value;
+        } else if (isPrimitive(value.getType())) {
+            return value.toString();
+        }
+        return "(" + jvmName + ") " + value;
+    }
+
+    private static String receiver(Ir.Value value) {
+        return isPrimitive(value.getType()) ? "((" + box(value.getType().getJvmName()) + ") " + value + ")" : value.toString();
+    }
+
+    private static String field(Ir.Value receiver, String name) {
+        try {
+            return receiver.getType().getField(name).getJvmName();
+        } catch (RuntimeException e) {
+            return name;
+        }
+    }
+
+    private static String method(Ir.MethodCall call) {
+        try {
+            return call.getReceiver().getType().getMethod(call.getName(), call.getArguments().size()).getJvmName();
+        } catch (RuntimeException e) {
+            return call.getName();
+        }
+    }
+
+    private void declare(Object value, String jvmName) {
+        line(2, jvmName, " ", value, " = ", initial(jvmName), ";");
+    }
+
+    private static String literal(Object literal) {
+        if (literal instanceof BigInteger) {
+            return String.valueOf(((BigInteger) literal).intValue());
+        } else if (literal instanceof BigDecimal) {
+            return String.valueOf(((BigDecimal) literal).doubleValue());
+        } else if (literal instanceof Character) {
+            return "'" + escape(literal.toString(), '\'') + "'";
+        } else if (literal instanceof String) {
+            return "\"" + escape((String) literal, '"') + "\"";
+        }
+        return String.valueOf(literal);
+    }
+
+    private static String escape(String string, char quote) {
+        StringBuilder builder = new StringBuilder();
+        for (char c : string.toCharArray()) {
+            switch (c) {
+                case '\n': builder.append("\\n"); break;
+                case '\r': builder.append("\\r"); break;
+                case '\t': builder.append("\\t"); break;
+                case '\b': builder.append("\\b"); break;
+                case '\\': builder.append("\\\\"); break;
+                default: builder.append(c == quote ? "\\" + c : String.valueOf(c));
+            }
+        }
+        return builder.toString();
+    }
+
+    private static boolean isPrimitive(Environment.Type type) {
+        return Character.isLowerCase(type.getJvmName().charAt(0));
+    }
+
+    private static String box(String jvmName) {
+        switch (jvmName) {
+            case "int": return "Integer";
+            case "double": return "Double";
+            case "boolean": return "Boolean";
+            case "char": return "Character";
+            default: return jvmName;
+        }
+    }
+
+    private static String initial(String jvmName) {
+        switch (jvmName) {
+            case "int": return "0";
+            case "double": return "0.0";
+            case "boolean": return "false";
+            case "char": return "'\\0'";
+            default: return "null";
+        }
+    }
+
+    private static boolean usesRange(Ir.Program program) {
+        for (Ir.Function function : program.getFunctions()) {
+            for (Ir.Block block : function.getBlocks()) {
+                for (Ir.Instruction instruction : block.getInstructions()) {
+                    if (instruction instanceof Ir.Call && ((Ir.Call) instruction).getTarget() == null && ((Ir.Call) instruction).getName().equals("range")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void line(int indent, Object... parts) {
+        for (int i = 0; i < indent; i++) {
+            writer.write("    ");
+        }
+        for (Object part : parts) {
+            writer.write(String.valueOf(part));
+        }
+        writer.println();
+    }
+
+}
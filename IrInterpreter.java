@@ -0,0 +1,176 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs an {@link Ir.Program} directly, as an alternative to the tree-walking
+ * {@link Interpreter}. Each call gets an array with a slot per SSA value, so
+ * locals need neither scopes nor frames, and blocks are executed one after
+ * another by following their terminators. Operators, output and the budget
+ * behave the same as in the {@link Interpreter}.
+ */
+public final class IrInterpreter {
+
+    private final Ir.Program program;
+    private final Scope scope;
+    private final OutputSink output;
+    private final Map<String, Environment.PlcObject> globals = new HashMap<>();
+    // the host function each call without a target resolved to
+    private final Map<Ir.Call, Environment.Function> hosts = new IdentityHashMap<>();
+    private ExecutionBudget budget = ExecutionBudget.unlimited();
+
+    public IrInterpreter(Ir.Program program, Scope parent) {
+        this(program, parent, OutputSink.standardOutput());
+    }
+
+    public IrInterpreter(Ir.Program program, Scope parent, OutputSink output) {
+        this.program = program;
+        this.output = output;
+        scope = new Scope(parent);
+        scope.defineFunction("print", 1, args -> {
+            output.println(args.get(0).getValue());
+            return Environment.NIL;
+        });
+        scope.defineFunction("range", 2, args -> Environment.create(IntegerRange.of(args.get(0), args.get(1), Environment.createInteger(1))));
+        scope.defineFunction("range", 3, args -> Environment.create(IntegerRange.of(args.get(0), args.get(1), args.get(2))));
+    }
+
+    public OutputSink getOutput() {
+        return output;
+    }
+
+    public ExecutionBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the fuel/deadline/cancellation budget, which is charged once per
+     * loop iteration and method call.
+     */
+    public void setBudget(ExecutionBudget budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Initializes the fields and returns the result of {@code main/0}.
+     */
+    public Environment.PlcObject run() {
+        try {
+            execute(program.getInitializer(), new ArrayList<>());
+            Ir.Function main = program.getFunction("main", 0);
+            if (main == null) {
+                throw new RuntimeException("The program has no main/0 method.");
+            }
+            return call(main, new ArrayList<>());
+        } finally {
+            output.flush();
+        }
+    }
+
+    public Environment.PlcObject call(Ir.Function function, List<Environment.PlcObject> arguments) {
+        budget.tick();
+        return execute(function, arguments);
+    }
+
+    private Environment.PlcObject execute(Ir.Function function, List<Environment.PlcObject> arguments) {
+        Object[] values = new Object[function.getValueCount()];
+        Ir.Block previous = null;
+        Ir.Block block = function.getEntry();
+        while (true) {
+            if (block.isLoopHeader()) {
+                budget.tick();
+            }
+            if (!block.getPhis().isEmpty()) {
+                // phis read their operands together, before any is assigned
+                int index = block.getPredecessors().indexOf(previous);
+                Object[] incoming = new Object[block.getPhis().size()];
+                for (int i = 0; i < incoming.length; i++) {
+                    incoming[i] = values[block.getPhis().get(i).getOperands().get(index).getId()];
+                }
+                for (int i = 0; i < incoming.length; i++) {
+                    values[block.getPhis().get(i).getId()] = incoming[i];
+                }
+            }
+            for (Ir.Instruction instruction : block.getInstructions()) {
+                values[instruction.getId()] = evaluate(instruction, values, arguments);
+            }
+            Ir.Terminator terminator = block.getTerminator();
+            previous = block;
+            if (terminator instanceof Ir.Jump) {
+                block = ((Ir.Jump) terminator).getTarget();
+            } else if (terminator instanceof Ir.Branch) {
+                Ir.Branch branch = (Ir.Branch) terminator;
+                boolean condition = Interpreter.requireType(Boolean.class, object(values, branch.getCondition()));
+                block = condition ? branch.getThen() : branch.getElse();
+            } else {
+                return object(values, ((Ir.Return) terminator).getValue());
+            }
+        }
+    }
+
+    private Object evaluate(Ir.Instruction instruction, Object[] values, List<Environment.PlcObject> arguments) {
+        if (instruction instanceof Ir.Constant) {
+            return ((Ir.Constant) instruction).getObject();
+        } else if (instruction instanceof Ir.Parameter) {
+            return arguments.get(((Ir.Parameter) instruction).getIndex());
+        } else if (instruction instanceof Ir.Binary) {
+            Ir.Binary binary = (Ir.Binary) instruction;
+            return Interpreter.binary(binary.getOperator(), object(values, binary.getLeft()), object(values, binary.getRight()));
+        } else if (instruction instanceof Ir.Load) {
+            String name = ((Ir.Load) instruction).getName();
+            Environment.PlcObject value = globals.get(name);
+            return value != null ? value : scope.lookupVariable(name).getValue();
+        } else if (instruction instanceof Ir.Store) {
+            Ir.Store store = (Ir.Store) instruction;
+            globals.put(store.getName(), object(values, store.getValue()));
+            return Environment.NIL;
+        } else if (instruction instanceof Ir.GetField) {
+            Ir.GetField get = (Ir.GetField) instruction;
+            return object(values, get.getReceiver()).getField(get.getName()).getValue();
+        } else if (instruction instanceof Ir.SetField) {
+            Ir.SetField set = (Ir.SetField) instruction;
+            object(values, set.getReceiver()).setField(set.getName(), object(values, set.getValue()));
+            return Environment.NIL;
+        } else if (instruction instanceof Ir.Call) {
+            Ir.Call call = (Ir.Call) instruction;
+            List<Environment.PlcObject> args = objects(values, call.getArguments());
+            if (call.getTarget() != null) {
+                return call(call.getTarget(), args);
+            }
+            Environment.Function function = hosts.get(call);
+            if (function == null) {
+                function = scope.lookupFunction(call.getName(), args.size());
+                hosts.put(call, function);
+            }
+            return function.invoke(args);
+        } else if (instruction instanceof Ir.MethodCall) {
+            Ir.MethodCall call = (Ir.MethodCall) instruction;
+            return object(values, call.getReceiver()).callMethod(call.getName(), objects(values, call.getArguments()));
+        } else if (instruction instanceof Ir.Iterate) {
+            return Interpreter.requireType(Iterable.class, object(values, ((Ir.Iterate) instruction).getIterable())).iterator();
+        } else if (instruction instanceof Ir.HasNext) {
+            return Environment.create(((Iterator<?>) values[((Ir.HasNext) instruction).getIterator().getId()]).hasNext());
+        } else if (instruction instanceof Ir.Next) {
+            return ((Iterator<?>) values[((Ir.Next) instruction).getIterator().getId()]).next();
+        }
+        throw new UnsupportedOperationException("Unknown instruction " + instruction.getClass().getSimpleName() + ".");
+    }
+
+    private static Environment.PlcObject object(Object[] values, Ir.Value value) {
+        return (Environment.PlcObject) values[value.getId()];
+    }
+
+    private static List<Environment.PlcObject> objects(Object[] values, List<Ir.Value> operands) {
+        List<Environment.PlcObject> objects = new ArrayList<>(operands.size());
+        for (Ir.Value operand : operands) {
+            objects.add(object(values, operand));
+        }
+        return objects;
+    }
+
+}
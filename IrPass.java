@@ -0,0 +1,15 @@
+package plc.project;
+
+/**
+ * A transformation of one {@link Ir.Function}, run by a {@link PassManager}.
+ */
+public interface IrPass {
+
+    String getName();
+
+    /**
+     * Runs the pass on {@code function}, returning whether it changed it.
+     */
+    boolean run(Ir.Function function);
+
+}
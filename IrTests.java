@@ -0,0 +1,118 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.stream.Stream;
+
+public class IrTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = interpret(source);
+        Assertions.assertEquals(expected, run(source, false), "unoptimized");
+        Assertions.assertEquals(expected, run(source, true), "optimized");
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "DEF main(): Integer DO RETURN (1 + (2 * 3)) * (4 - 1); END"),
+                Arguments.of("Fields", "LET k: Integer = 3; LET s: String = \"k\"; DEF main(): Integer DO print(s + k); k = k + 1; RETURN k; END"),
+                Arguments.of("If", "DEF main(): Integer DO LET x = 1; IF x < 2 DO x = x + 10; ELSE x = x - 10; END RETURN x; END"),
+                Arguments.of("Constant If", "DEF main(): Integer DO LET x = 1; IF 1 < 2 DO x = 2; ELSE x = 3; END RETURN x; END"),
+                Arguments.of("While", "DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 10 DO s = s + i; i = i + 1; END RETURN s; END"),
+                Arguments.of("Swap", "DEF main(): Integer DO LET a = 1; LET b = 2; LET i = 0; WHILE i < 3 DO LET t = a; a = b; b = t; i = i + 1; END print(a); RETURN b; END"),
+                Arguments.of("For", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 10, 3) DO print(i); s = s + i; END RETURN s; END"),
+                Arguments.of("Short Circuit", "DEF t(): Boolean DO print(1); RETURN TRUE; END DEF main(): Integer DO LET x = 1; IF (x > 2) AND t() DO RETURN 1; END IF (x < 2) OR t() DO RETURN 2; END RETURN 0; END"),
+                Arguments.of("Recursion", "DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main(): Integer DO RETURN fib(15); END"),
+                Arguments.of("Overflow", "DEF main(): Integer DO LET x = 2147483647; RETURN (x + 1) + 2147483647; END"),
+                Arguments.of("Constant Overflow", "DEF main(): Integer DO RETURN 2147483647 + 1; END"),
+                Arguments.of("Division By Zero", "DEF main(): Integer DO RETURN 1 / 0; END"),
+                Arguments.of("Unused Division By Zero", "DEF main(): Integer DO LET x = 1 / 0; RETURN 0; END"),
+                Arguments.of("Unused Nil Arithmetic", "LET y: Integer; DEF main(): Integer DO LET x = y + 1; RETURN 0; END"),
+                Arguments.of("Unused Nil Comparison", "LET y: Integer; DEF main(): Integer DO LET x = y < 1; RETURN 0; END"),
+                Arguments.of("Unused Mixed Comparison", "DEF main(): Integer DO LET x = 1 < \"a\"; RETURN 0; END"),
+                Arguments.of("Unused Same Type Comparison", "DEF main(): Integer DO LET x = 1 < 2; RETURN 0; END"),
+                Arguments.of("Unused Nil Equality", "LET y: Integer; DEF main(): Integer DO LET x = y == 1; RETURN 0; END"),
+                Arguments.of("Nil Parameter", "DEF f(n: Integer): Integer DO LET x = n * 2; RETURN 0; END DEF main(): Integer DO LET y: Integer; RETURN f(y); END")
+        );
+    }
+
+    @Test
+    void testPasses() {
+        Ir.Program program = build("DEF main(): Integer DO LET x = 1; IF 1 < 2 DO x = 2 * 3; ELSE x = 3; END RETURN x; END");
+        PassManager passes = PassManager.standard();
+        passes.run(program);
+        Ir.Function main = program.getFunction("main", 0);
+        for (Ir.Block block : main.getBlocks()) {
+            Assertions.assertTrue(block.getPhis().isEmpty(), main.toString());
+            Assertions.assertFalse(block.getTerminator() instanceof Ir.Branch, main.toString());
+        }
+        Assertions.assertTrue(passes.getChanges().containsKey("constant-folding"));
+        Assertions.assertTrue(passes.getChanges().containsKey("branch-folding"));
+        Assertions.assertTrue(passes.getChanges().containsKey("unreachable-blocks"));
+    }
+
+    @Test
+    void testKeepsFailingValues() {
+        Ir.Program program = build("DEF main(): Integer DO LET x = 1 / 0; RETURN 0; END");
+        PassManager.standard().run(program);
+        Assertions.assertTrue(program.getFunction("main", 0).toString().contains("/"), program.toString());
+    }
+
+    @Test
+    void testLoopPhis() {
+        Ir.Program program = build("DEF main(): Integer DO LET i = 0; WHILE i < 10 DO i = i + 1; END RETURN i; END");
+        PassManager.standard().run(program);
+        Assertions.assertTrue(program.getFunction("main", 0).getBlocks().stream().anyMatch(block -> block.getPhis().size() == 1), program.toString());
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    private static Ir.Program build(String source) {
+        return new IrBuilder().build(analyze(source));
+    }
+
+    /**
+     * Runs {@code source} with the {@link Interpreter}, returning what it
+     * printed and its result or error.
+     */
+    private static String interpret(String source) {
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(analyze(source)).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+    /**
+     * Runs {@code source} with the {@link IrInterpreter}, optionally after the
+     * standard passes, returning what it printed and its result or error.
+     */
+    private static String run(String source, boolean optimized) {
+        Ir.Program program = build(source);
+        if (optimized) {
+            PassManager.standard().run(program);
+        }
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new IrInterpreter(program, new Scope(null), new OutputSink(writer)).run().getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
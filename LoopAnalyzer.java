@@ -0,0 +1,282 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the FOR loops of a resolved {@link Ast.Source} whose iterations are
+ * independent and marks them parallel, so the {@link Interpreter} may run
+ * them on several threads. A loop body qualifies if it has no RETURN, only
+ * calls pure methods (see {@link PurityAnalyzer}, which has to run first),
+ * doesn't touch objects through a receiver, doesn't assign fields and only
+ * assigns variables from outside the loop as reductions.
+ * <p>
+ * A reduction is an assignment {@code x = x + e} or {@code x = x * e} to an
+ * Integer {@code x} declared outside the loop, where {@code x} isn't read
+ * anywhere else in the body. Integer addition and multiplication are
+ * associative, so the iterations can be split into chunks whose
+ * contributions are combined in order afterwards. Without the types from the
+ * {@link Analyzer} nothing counts as a reduction.
+ */
+public final class LoopAnalyzer implements Ast.Visitor<Void> {
+
+    private final Map<String, Ast.Method> methods = new HashMap<>();
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        for (Ast.Method method : ast.getMethods()) {
+            methods.put(method.getName() + "/" + method.getParameters().size(), method);
+        }
+        ast.getMethods().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        ast.getThenStatements().forEach(this::visit);
+        ast.getElseStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        Body body = new Body();
+        ast.getStatements().forEach(body::visit);
+        ast.setReductions(body.independent() ? body.reductions : null);
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        return null;
+    }
+
+    /**
+     * Checks a single loop body. Variables from outside the loop are
+     * identified by their address relative to the frame enclosing the loop,
+     * {@code level} is the number of frames entered since the loop's own.
+     */
+    private final class Body implements Ast.Visitor<Void> {
+
+        private final List<Ast.Stmt.Assignment> reductions = new ArrayList<>();
+        private final Set<String> reduced = new HashSet<>();
+        private final Set<String> reads = new HashSet<>();
+        private boolean valid = true;
+        private int level = 0;
+
+        private boolean independent() {
+            return valid && reads.stream().noneMatch(reduced::contains);
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            if (!(ast.getReceiver() instanceof Ast.Expr.Access) || ((Ast.Expr.Access) ast.getReceiver()).getReceiver().isPresent()) {
+                valid = false;
+                return null;
+            }
+            Ast.Expr.Access receiver = (Ast.Expr.Access) ast.getReceiver();
+            if (receiver.getDepth() < 0) {
+                valid = false;
+            } else if (receiver.getDepth() <= level) {
+                visit(ast.getValue());
+            } else if (isReduction(receiver, ast.getValue()) && reduced.add(outer(receiver))) {
+                reductions.add(ast);
+                visit(((Ast.Expr.Binary) ast.getValue()).getRight());
+            } else {
+                valid = false;
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            visit(ast.getCondition());
+            block(ast.getThenFrameSize(), ast.getThenStatements());
+            block(ast.getElseFrameSize(), ast.getElseStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            visit(ast.getValue());
+            block(ast.getFrameSize(), ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            visit(ast.getCondition());
+            block(ast.getFrameSize(), ast.getStatements());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            valid = false;
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            if (ast.getReceiver().isPresent()) {
+                valid = false;
+            } else if (ast.getDepth() > level) {
+                reads.add(outer(ast));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            String name = ast.getName() + "/" + ast.getArguments().size();
+            boolean pure = name.equals("range/2") || name.equals("range/3")
+                    || methods.containsKey(name) && methods.get(name).isPure();
+            if (ast.getReceiver().isPresent() || !pure) {
+                valid = false;
+            }
+            ast.getArguments().forEach(this::visit);
+            return null;
+        }
+
+        private void block(int frameSize, List<Ast.Stmt> statements) {
+            int entered = frameSize > 0 ? 1 : 0;
+            level += entered;
+            statements.forEach(this::visit);
+            level -= entered;
+        }
+
+        private boolean isReduction(Ast.Expr.Access receiver, Ast.Expr value) {
+            if (!(value instanceof Ast.Expr.Binary)) {
+                return false;
+            }
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) value;
+            if (!binary.getOperator().equals("+") && !binary.getOperator().equals("*") || !(binary.getLeft() instanceof Ast.Expr.Access)) {
+                return false;
+            }
+            Ast.Expr.Access left = (Ast.Expr.Access) binary.getLeft();
+            return !left.getReceiver().isPresent() && left.getDepth() == receiver.getDepth() && left.getSlot() == receiver.getSlot()
+                    && isInteger(receiver) && isInteger(binary.getRight());
+        }
+
+        private String outer(Ast.Expr.Access ast) {
+            return (ast.getDepth() - level - 1) + ":" + ast.getSlot();
+        }
+
+    }
+
+    private static boolean isInteger(Ast.Expr expr) {
+        try {
+            return expr.getType() == Environment.Type.INTEGER;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+}
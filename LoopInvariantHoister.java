@@ -0,0 +1,394 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Moves loop-invariant expressions out of the WHILE and FOR loops of an
+ * analyzed {@link Ast.Source}, returning a new AST (the input isn't
+ * modified, but shares the nodes that didn't change with it). Each invariant
+ * binary expression in a loop's condition or body is evaluated once into a
+ * temporary declared right before the loop, named {@code $licm0},
+ * {@code $licm1}, ... so it can't clash with a source identifier. Inner
+ * loops are handled first, so an expression invariant in several loops
+ * moves out of all of them.
+ * <p>
+ * An expression is invariant if it only reads variables that the loop
+ * neither declares nor assigns, and, if the loop calls anything other than
+ * {@code range}, no fields. Since it now runs even when the loop doesn't, or
+ * when the branch it was in isn't taken, it also must not be able to fail or
+ * have an effect: it can't call anything or go through a receiver, none of
+ * its operators may be one the {@link NilAnalyzer} finds can fail (a
+ * division, a comparison of mixed types, ...), and every variable it reads
+ * must be one the analyzer finds is never NIL. Nested loop bodies aren't searched: what's left in them after
+ * their own hoisting depends on them.
+ */
+public final class LoopInvariantHoister implements Ast.Visitor<Ast> {
+
+    private final Set<Environment.Variable> fields = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final NilAnalyzer nils = new NilAnalyzer();
+    private int temporaries = 0;
+
+    /**
+     * The loop being hoisted from, if any: the names it declares or assigns,
+     * whether it calls anything and the temporaries created so far.
+     */
+    private Set<String> variant = null;
+    private boolean calls = false;
+    private List<Ast.Stmt.Declaration> hoisted = null;
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        nils.visit(ast);
+        List<Ast.Field> fields = new ArrayList<>();
+        ast.getFields().forEach(field -> fields.add(visit(field)));
+        List<Ast.Method> methods = new ArrayList<>();
+        ast.getMethods().forEach(method -> methods.add(visit(method)));
+        return new Ast.Source(fields, methods);
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        copy(() -> ast.getVariable(), fields::add);
+        return ast;
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        temporaries = 0;
+        Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements(ast.getStatements()));
+        copy(() -> ast.getFunction(), method::setFunction);
+        return method;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Expression ast) {
+        return new Ast.Stmt.Expression(expr(ast.getExpression()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+        copy(() -> ast.getVariable(), declaration::setVariable);
+        return declaration;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+        return new Ast.Stmt.Assignment(ast.getReceiver(), expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.If ast) {
+        return new Ast.Stmt.If(expr(ast.getCondition()), statements(ast.getThenStatements()), statements(ast.getElseStatements()));
+    }
+
+    /**
+     * While hoisting from an enclosing loop only the iterable is searched,
+     * which is evaluated once per iteration of that loop.
+     */
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        if (variant != null) {
+            return new Ast.Stmt.For(ast.getName(), expr(ast.getValue()), ast.getStatements());
+        }
+        List<Ast.Stmt> statements = statements(ast.getStatements());
+        Effects effects = new Effects();
+        effects.names.add(ast.getName());
+        statements.forEach(effects::visit);
+        enter(effects);
+        try {
+            return new Ast.Stmt.For(ast.getName(), ast.getValue(), statements(statements));
+        } finally {
+            variant = null;
+        }
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.While ast) {
+        if (variant != null) {
+            return ast;
+        }
+        List<Ast.Stmt> statements = statements(ast.getStatements());
+        Effects effects = new Effects();
+        effects.visit(ast.getCondition());
+        statements.forEach(effects::visit);
+        enter(effects);
+        try {
+            return new Ast.Stmt.While(expr(ast.getCondition()), statements(statements));
+        } finally {
+            variant = null;
+        }
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Return ast) {
+        return new Ast.Stmt.Return(expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Literal ast) {
+        return ast;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        if (isHoistable(ast)) {
+            return temporary(ast);
+        }
+        Ast.Expr.Group group = new Ast.Expr.Group(expr(ast.getExpression()));
+        copy(() -> ast.getType(), group::setType);
+        return group;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        if (isHoistable(ast)) {
+            return temporary(ast);
+        }
+        Ast.Expr.Binary binary = new Ast.Expr.Binary(ast.getOperator(), expr(ast.getLeft()), expr(ast.getRight()));
+        copy(() -> ast.getType(), binary::setType);
+        return binary;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        if (!ast.getReceiver().isPresent()) {
+            return ast;
+        }
+        Ast.Expr.Access access = new Ast.Expr.Access(ast.getReceiver().map(this::expr), ast.getName());
+        copy(() -> ast.getVariable(), access::setVariable);
+        return access;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        List<Ast.Expr> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(expr(argument)));
+        Ast.Expr.Function function = new Ast.Expr.Function(ast.getReceiver().map(this::expr), ast.getName(), arguments);
+        copy(() -> ast.getFunction(), function::setFunction);
+        return function;
+    }
+
+    private Ast.Expr expr(Ast.Expr ast) {
+        return variant == null ? ast : (Ast.Expr) visit(ast);
+    }
+
+    /**
+     * Rebuilds a list of statements, putting the temporaries hoisted out of a
+     * loop right before it.
+     */
+    private List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> result = new ArrayList<>();
+        for (Ast.Stmt statement : statements) {
+            Ast.Stmt stmt = (Ast.Stmt) visit(statement);
+            if (variant == null && hoisted != null) {
+                result.addAll(hoisted);
+                hoisted = null;
+            }
+            result.add(stmt);
+        }
+        return result;
+    }
+
+    /**
+     * Starts hoisting from a loop whose body has been rebuilt already.
+     */
+    private void enter(Effects effects) {
+        variant = effects.names;
+        calls = effects.calls;
+        hoisted = new ArrayList<>();
+    }
+
+    private boolean isHoistable(Ast.Expr ast) {
+        Ast.Expr expression = ast;
+        while (expression instanceof Ast.Expr.Group) {
+            expression = ((Ast.Expr.Group) expression).getExpression();
+        }
+        return variant != null && expression instanceof Ast.Expr.Binary && typeOf(ast) != null && isInvariant(ast);
+    }
+
+    private boolean isInvariant(Ast.Expr ast) {
+        if (ast instanceof Ast.Expr.Literal) {
+            return true;
+        } else if (ast instanceof Ast.Expr.Group) {
+            return isInvariant(((Ast.Expr.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expr.Binary) {
+            Ast.Expr.Binary binary = (Ast.Expr.Binary) ast;
+            return isInvariant(binary.getLeft()) && isInvariant(binary.getRight()) && !nils.canFail(binary);
+        } else if (ast instanceof Ast.Expr.Access) {
+            Ast.Expr.Access access = (Ast.Expr.Access) ast;
+            if (access.getReceiver().isPresent() || variant.contains(access.getName())) {
+                return false;
+            }
+            try {
+                return nils.isNeverNil(access.getVariable()) && (!calls || !fields.contains(access.getVariable()));
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Declares a temporary for {@code ast}, reusing one for an equal
+     * expression hoisted from the same loop.
+     */
+    private Ast.Expr.Access temporary(Ast.Expr ast) {
+        Ast.Stmt.Declaration declaration = null;
+        for (Ast.Stmt.Declaration temporary : hoisted) {
+            if (temporary.getValue().get().equals(ast)) {
+                declaration = temporary;
+            }
+        }
+        if (declaration == null) {
+            String name = "$licm" + temporaries++;
+            declaration = new Ast.Stmt.Declaration(name, Optional.empty(), Optional.of(ast));
+            declaration.setVariable(new Environment.Variable(name, name, ast.getType(), Environment.NIL));
+            nils.define(declaration.getVariable(), ast);
+            hoisted.add(declaration);
+        }
+        Ast.Expr.Access access = new Ast.Expr.Access(Optional.empty(), declaration.getName());
+        access.setVariable(declaration.getVariable());
+        return access;
+    }
+
+    /**
+     * Collects the names a loop declares or assigns and whether it calls
+     * anything, nested loops included.
+     */
+    private static final class Effects implements Ast.Visitor<Void> {
+
+        private final Set<String> names = new HashSet<>();
+        private boolean calls = false;
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            names.add(ast.getName());
+            ast.getValue().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            if (ast.getReceiver() instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast.getReceiver()).getReceiver().isPresent()) {
+                names.add(((Ast.Expr.Access) ast.getReceiver()).getName());
+            } else {
+                visit(ast.getReceiver());
+            }
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            visit(ast.getCondition());
+            ast.getThenStatements().forEach(this::visit);
+            ast.getElseStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            names.add(ast.getName());
+            visit(ast.getValue());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            visit(ast.getCondition());
+            ast.getStatements().forEach(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            ast.getReceiver().ifPresent(this::visit);
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            String name = ast.getName() + "/" + ast.getArguments().size();
+            // range can't assign anything
+            if (ast.getReceiver().isPresent() || !name.equals("range/2") && !name.equals("range/3")) {
+                calls = true;
+            }
+            ast.getReceiver().ifPresent(this::visit);
+            ast.getArguments().forEach(this::visit);
+            return null;
+        }
+
+    }
+
+    private static Environment.Type typeOf(Ast.Expr expr) {
+        try {
+            return expr.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static <T> void copy(Supplier<T> getter, Consumer<T> setter) {
+        try {
+            setter.accept(getter.get());
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class LoopInvariantHoisterTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = run(source, UnaryOperator.identity());
+        Assertions.assertEquals(expected, run(source, ast -> new LoopInvariantHoister().visit(ast)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("While", "DEF main(): Integer DO LET a = 3; LET b = 4; LET i = 0; LET s = 0; WHILE i < 3 DO s = s + (a * b); i = i + 1; END RETURN s; END"),
+                Arguments.of("For", "DEF main(): Integer DO LET a = 3; LET s = 0; FOR i IN range(0, 4) DO s = s + (a * 2) + i; END RETURN s; END"),
+                Arguments.of("Nested", "DEF main(): Integer DO LET a = 3; LET s = 0; FOR i IN range(0, 3) DO FOR j IN range(0, 3) DO s = s + (a * a) + (i * 2); END END RETURN s; END"),
+                Arguments.of("Assigned In Loop", "DEF main(): Integer DO LET a = 1; LET s = 0; FOR i IN range(0, 3) DO s = s + (a * 2); a = a + 1; END RETURN s; END"),
+                Arguments.of("Declared In Loop", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 3) DO LET a = i; s = s + (a * 2); END RETURN s; END"),
+                Arguments.of("Zero Iterations Division", "DEF main(): Integer DO LET a = 0; LET s = 0; WHILE s > 1 DO s = 1 / a; END RETURN s; END"),
+                Arguments.of("Nil Field In If", "LET y: Integer; DEF main(): Integer DO LET i = 0; LET s = 0; WHILE i < 3 DO IF y != NIL DO s = s + (y * 2); END i = i + 1; END print(s); RETURN 0; END"),
+                Arguments.of("Nil Field In Untaken If", "LET y: Integer; DEF main(): Integer DO LET i = 0; LET s = 0; WHILE i < 3 DO IF i > 5 DO s = s + (y * 2); END i = i + 1; END print(s); RETURN 0; END"),
+                Arguments.of("Nil Field Zero Iterations", "LET y: Integer; DEF main(): Integer DO LET i = 0; LET s = 0; WHILE i > 3 DO s = s + (y * 2); END print(s); RETURN 0; END"),
+                Arguments.of("Nil Local", "DEF main(): Integer DO LET y: Integer; LET s = 0; FOR i IN range(0, 3) DO IF i > 5 DO s = s + (y * 2); END END RETURN s; END"),
+                Arguments.of("Nil Parameter", "LET z: Integer; DEF f(y: Integer): Integer DO LET s = 0; FOR i IN range(0, 3) DO IF i > 5 DO s = s + (y * 2); END END RETURN s; END DEF main(): Integer DO RETURN f(z); END"),
+                Arguments.of("Mixed Comparison Zero Iterations", "DEF main(): Integer DO LET a = 1; LET s = \"x\"; FOR i IN range(0, 0) DO IF a < s DO print(1); END END RETURN 0; END"),
+                Arguments.of("Mixed Comparison While", "DEF main(): Integer DO LET a = 1; LET d = 1.5; LET i = 0; WHILE i < 0 DO IF a < d DO print(1); END i = i + 1; END RETURN 0; END"),
+                Arguments.of("Mixed Comparison Taken", "DEF main(): Integer DO LET a = 1; LET s = \"x\"; FOR i IN range(0, 2) DO print(i); IF a < s DO print(1); END END RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testHoistsInvariant() {
+        Ast.Method main = hoist("DEF main(): Integer DO LET a = 3; LET s = 0; FOR i IN range(0, 4) DO s = s + (a * 2); END RETURN s; END");
+        Assertions.assertEquals(List.of("a", "s", "$licm0"), declarations(main));
+    }
+
+    @Test
+    void testHoistsOutOfNestedLoops() {
+        Ast.Method main = hoist("DEF main(): Integer DO LET a = 3; LET s = 0; FOR i IN range(0, 3) DO FOR j IN range(0, 3) DO s = s + (a * a); END END RETURN s; END");
+        Assertions.assertEquals(List.of("a", "s", "$licm1"), declarations(main));
+    }
+
+    @Test
+    void testKeepsNilField() {
+        Ast.Method main = hoist("LET y: Integer; DEF main(): Integer DO LET i = 0; LET s = 0; WHILE i < 3 DO IF y != NIL DO s = s + (y * 2); END i = i + 1; END RETURN s; END");
+        Assertions.assertEquals(List.of("i", "s"), declarations(main));
+    }
+
+    @Test
+    void testKeepsMixedComparison() {
+        Ast.Method main = hoist("DEF main(): Integer DO LET a = 1; LET s = \"x\"; FOR i IN range(0, 0) DO IF a < s DO print(1); END END RETURN 0; END");
+        Assertions.assertEquals(List.of("a", "s"), declarations(main));
+    }
+
+    @Test
+    void testHoistsComparison() {
+        Ast.Method main = hoist("DEF main(): Integer DO LET a = 1; LET b = 2; FOR i IN range(0, 3) DO IF a < b DO print(i); END END RETURN 0; END");
+        Assertions.assertEquals(List.of("a", "b", "$licm0"), declarations(main));
+    }
+
+    @Test
+    void testKeepsVariant() {
+        Ast.Method main = hoist("DEF main(): Integer DO LET s = 0; FOR i IN range(0, 4) DO s = s + (i * 2); END RETURN s; END");
+        Assertions.assertEquals(List.of("s"), declarations(main));
+    }
+
+    /**
+     * Returns the names declared directly in the body of {@code method}.
+     */
+    private static List<String> declarations(Ast.Method method) {
+        return method.getStatements().stream()
+                .filter(statement -> statement instanceof Ast.Stmt.Declaration)
+                .map(statement -> ((Ast.Stmt.Declaration) statement).getName())
+                .collect(Collectors.toList());
+    }
+
+    private static Ast.Method hoist(String source) {
+        Ast.Source ast = new LoopInvariantHoister().visit(analyze(source));
+        return ast.getMethods().get(ast.getMethods().size() - 1);
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} after {@code pass}, returning what it printed and
+     * its result or error.
+     */
+    private static String run(String source, UnaryOperator<Ast.Source> pass) {
+        Ast.Source ast = pass.apply(analyze(source));
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
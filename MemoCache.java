@@ -0,0 +1,169 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of the results of pure method calls (see
+ * {@link PurityAnalyzer}), keyed on the method and the values of its
+ * arguments. Only calls whose arguments are immutable values (Integers,
+ * Decimals, Strings, Booleans, Characters and NIL) are cached. A cache belongs
+ * to a single {@link Interpreter} and isn't thread-safe.
+ * <p>
+ * Hashing the arguments costs more than rerunning a cheap method that is
+ * rarely called with the same arguments twice, so after
+ * {@link #SAMPLE_CALLS} lookups a method that hit less than once in
+ * {@link #MINIMUM_HIT_RATIO} calls stops being memoized.
+ */
+public final class MemoCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int SAMPLE_CALLS = 256;
+    public static final int MINIMUM_HIT_RATIO = 8;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Environment.PlcObject> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Ast.Method, Sample> samples = new IdentityHashMap<>();
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a cache holding at most {@code capacity} results. A capacity of
+     * 0 disables memoization.
+     */
+    public MemoCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative.");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the key for calling {@code method} with the first
+     * {@code arity} slots of {@code arguments}, or null if the call can't be
+     * cached.
+     */
+    public Key key(Ast.Method method, Frame arguments, int arity) {
+        if (capacity == 0) {
+            return null;
+        }
+        Sample sample = samples.get(method);
+        if (sample == null) {
+            sample = new Sample();
+            samples.put(method, sample);
+        } else if (sample.lookups >= SAMPLE_CALLS && sample.hits * MINIMUM_HIT_RATIO < sample.lookups) {
+            return null;
+        }
+        Object[] values = new Object[arity];
+        for (int i = 0; i < arity; i++) {
+            Environment.PlcObject argument = arguments.get(0, i);
+            if (argument == Environment.NIL) {
+                values[i] = Environment.NIL;
+            } else if (isValue(argument.getValue())) {
+                values[i] = argument.getValue();
+            } else {
+                return null;
+            }
+        }
+        return new Key(method, sample, values);
+    }
+
+    public Environment.PlcObject get(Key key) {
+        Environment.PlcObject result = entries.get(key);
+        if (key.sample.lookups < SAMPLE_CALLS) {
+            key.sample.lookups++;
+            if (result != null) {
+                key.sample.hits++;
+            }
+        }
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    public void put(Key key, Environment.PlcObject result) {
+        entries.put(key, result);
+        if (entries.size() > capacity) {
+            Iterator<Key> iterator = entries.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+        samples.clear();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private static boolean isValue(Object value) {
+        return value instanceof BigInteger || value instanceof BigDecimal || value instanceof String
+                || value instanceof Boolean || value instanceof Character;
+    }
+
+    public static final class Key {
+
+        private final Ast.Method method;
+        private final Sample sample;
+        private final Object[] values;
+        private final int hash;
+
+        private Key(Ast.Method method, Sample sample, Object[] values) {
+            this.method = method;
+            this.sample = sample;
+            this.values = values;
+            this.hash = 31 * System.identityHashCode(method) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key &&
+                    hash == ((Key) obj).hash &&
+                    method == ((Key) obj).method &&
+                    Arrays.equals(values, ((Key) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    private static final class Sample {
+
+        private int lookups = 0;
+        private int hits = 0;
+
+    }
+
+}
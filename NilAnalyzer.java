@@ -0,0 +1,186 @@
+package plc.project;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Finds the fields and locals of an analyzed {@link Ast.Source} that are
+ * never NIL: those only ever given a non-NIL literal or the result of a
+ * binary expression, which fails rather than produce NIL. Parameters, FOR
+ * variables and variables declared without a value may be NIL. Passes that
+ * move an operator to where it may run when it didn't before use it, through
+ * {@link #canFail(Ast.Expr.Binary)}, to make sure the operator can't fail
+ * there.
+ */
+public final class NilAnalyzer implements Ast.Visitor<Void> {
+
+    private final Map<Environment.Variable, Boolean> values = new IdentityHashMap<>();
+
+    /**
+     * Returns whether {@code variable} is never NIL.
+     */
+    public boolean isNeverNil(Environment.Variable variable) {
+        return values.getOrDefault(variable, false);
+    }
+
+    /**
+     * Returns whether {@code expr} never evaluates to NIL.
+     */
+    public boolean isNeverNil(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Access && !((Ast.Expr.Access) expr).getReceiver().isPresent()) {
+            try {
+                return isNeverNil(((Ast.Expr.Access) expr).getVariable());
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }
+        return isValue(expr);
+    }
+
+    /**
+     * Returns whether applying the operator of {@code ast} to the values of its
+     * operands can fail: a division, a comparison of operands that don't both
+     * have the same Integer, Decimal, Character or String type (the
+     * {@link Analyzer} accepts any two Comparables), or any other operator
+     * than {@code ==}/{@code !=} on an operand that may be NIL. Whether
+     * evaluating the operands themselves can fail is up to the caller.
+     */
+    public boolean canFail(Ast.Expr.Binary ast) {
+        String operator = ast.getOperator();
+        if (operator.equals("/")) {
+            return true;
+        } else if (operator.equals("==") || operator.equals("!=")) {
+            return false;
+        } else if (!isNeverNil(ast.getLeft()) || !isNeverNil(ast.getRight())) {
+            return true;
+        } else if (operator.equals("<") || operator.equals("<=") || operator.equals(">") || operator.equals(">=")) {
+            Environment.Type left = typeOf(ast.getLeft());
+            return left != typeOf(ast.getRight()) || left != Environment.Type.INTEGER && left != Environment.Type.DECIMAL
+                    && left != Environment.Type.CHARACTER && left != Environment.Type.STRING;
+        }
+        return false;
+    }
+
+    /**
+     * Records that {@code variable} is given {@code value}, or NIL if it's
+     * null, e.g. for a temporary a pass declares.
+     */
+    public void define(Environment.Variable variable, Ast.Expr value) {
+        values.merge(variable, value != null && isValue(value), Boolean::logicalAnd);
+    }
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        ast.getFields().forEach(this::visit);
+        ast.getMethods().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        try {
+            define(ast.getVariable(), ast.getValue().orElse(null));
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        try {
+            define(ast.getVariable(), ast.getValue().orElse(null));
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        if (ast.getReceiver() instanceof Ast.Expr.Access && !((Ast.Expr.Access) ast.getReceiver()).getReceiver().isPresent()) {
+            try {
+                define(((Ast.Expr.Access) ast.getReceiver()).getVariable(), ast.getValue());
+            } catch (IllegalStateException e) {
+                // not analyzed
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        ast.getThenStatements().forEach(this::visit);
+        ast.getElseStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        return null;
+    }
+
+    private static Environment.Type typeOf(Ast.Expr expr) {
+        try {
+            return expr.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static boolean isValue(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Group) {
+            return isValue(((Ast.Expr.Group) expr).getExpression());
+        }
+        return expr instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expr).getLiteral() != null || expr instanceof Ast.Expr.Binary;
+    }
+
+}
@@ -0,0 +1,356 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Simplifies an analyzed {@link Ast.Source} before it is executed or
+ * compiled, returning a new, still fully typed AST (the input isn't
+ * modified). Binary expressions over literals are folded with the same
+ * semantics as the {@link Interpreter}, identities such as {@code x * 1},
+ * {@code x + 0} and {@code TRUE AND x} are simplified, and IF/WHILE
+ * statements with a constant condition are pruned.
+ * <p>
+ * Anything whose result could differ from running it is left alone: division
+ * by zero, Integers outside the range the {@link Analyzer} accepts (the
+ * {@link Generator} emits them as {@code int}s), Decimal identities (which
+ * change the scale), identities that would drop the evaluation of an
+ * operand and identities on operands that may be NIL (which the operator
+ * would reject).
+ */
+public final class Optimizer implements Ast.Visitor<Ast> {
+
+    private static final BigInteger INT_MIN = BigInteger.valueOf(Integer.MIN_VALUE);
+    private static final BigInteger INT_MAX = BigInteger.valueOf(Integer.MAX_VALUE);
+
+    @Override
+    public Ast.Source visit(Ast.Source ast) {
+        List<Ast.Field> fields = new ArrayList<>();
+        ast.getFields().forEach(field -> fields.add(visit(field)));
+        List<Ast.Method> methods = new ArrayList<>();
+        ast.getMethods().forEach(method -> methods.add(visit(method)));
+        return new Ast.Source(fields, methods);
+    }
+
+    @Override
+    public Ast.Field visit(Ast.Field ast) {
+        Ast.Field field = new Ast.Field(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+        copy(() -> ast.getVariable(), field::setVariable);
+        return field;
+    }
+
+    @Override
+    public Ast.Method visit(Ast.Method ast) {
+        Ast.Method method = new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(), ast.getReturnTypeName(), statements(ast.getStatements()));
+        copy(() -> ast.getFunction(), method::setFunction);
+        return method;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Expression ast) {
+        return new Ast.Stmt.Expression(expr(ast.getExpression()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Declaration ast) {
+        Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(ast.getName(), ast.getTypeName(), ast.getValue().map(this::expr));
+        copy(() -> ast.getVariable(), declaration::setVariable);
+        return declaration;
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Assignment ast) {
+        return new Ast.Stmt.Assignment(expr(ast.getReceiver()), expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.If ast) {
+        return new Ast.Stmt.If(expr(ast.getCondition()), statements(ast.getThenStatements()), statements(ast.getElseStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.For ast) {
+        return new Ast.Stmt.For(ast.getName(), expr(ast.getValue()), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.While ast) {
+        return new Ast.Stmt.While(expr(ast.getCondition()), statements(ast.getStatements()));
+    }
+
+    @Override
+    public Ast.Stmt visit(Ast.Stmt.Return ast) {
+        return new Ast.Stmt.Return(expr(ast.getValue()));
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Literal ast) {
+        return literal(ast.getLiteral(), typeOf(ast));
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Group ast) {
+        Ast.Expr expression = expr(ast.getExpression());
+        // parentheses only matter around a binary expression
+        if (!(expression instanceof Ast.Expr.Binary)) {
+            return expression;
+        }
+        Ast.Expr.Group group = new Ast.Expr.Group(expression);
+        copy(() -> ast.getType(), group::setType);
+        return group;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Binary ast) {
+        Ast.Expr left = expr(ast.getLeft());
+        Ast.Expr right = expr(ast.getRight());
+        Environment.Type type = typeOf(ast);
+        if (left instanceof Ast.Expr.Literal && right instanceof Ast.Expr.Literal) {
+            Object value = fold(ast.getOperator(), ((Ast.Expr.Literal) left).getLiteral(), ((Ast.Expr.Literal) right).getLiteral());
+            if (value != null) {
+                return literal(value, type);
+            }
+        }
+        Ast.Expr simplified = simplify(ast.getOperator(), left, right);
+        if (simplified != null) {
+            return simplified;
+        }
+        Ast.Expr.Binary binary = new Ast.Expr.Binary(ast.getOperator(), left, right);
+        if (type != null) {
+            binary.setType(type);
+        }
+        return binary;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Access ast) {
+        Ast.Expr.Access access = new Ast.Expr.Access(ast.getReceiver().map(this::expr), ast.getName());
+        copy(() -> ast.getVariable(), access::setVariable);
+        return access;
+    }
+
+    @Override
+    public Ast.Expr visit(Ast.Expr.Function ast) {
+        List<Ast.Expr> arguments = new ArrayList<>();
+        ast.getArguments().forEach(argument -> arguments.add(expr(argument)));
+        Ast.Expr.Function function = new Ast.Expr.Function(ast.getReceiver().map(this::expr), ast.getName(), arguments);
+        copy(() -> ast.getFunction(), function::setFunction);
+        return function;
+    }
+
+    private Ast.Expr expr(Ast.Expr ast) {
+        return (Ast.Expr) visit(ast);
+    }
+
+    /**
+     * Optimizes a list of statements, replacing an IF with a constant
+     * condition by the branch that runs and dropping a WHILE that never does.
+     * A branch with declarations is kept in an {@code IF TRUE} so that its
+     * variables stay in their own scope.
+     */
+    private List<Ast.Stmt> statements(List<Ast.Stmt> statements) {
+        List<Ast.Stmt> result = new ArrayList<>();
+        for (Ast.Stmt statement : statements) {
+            Ast.Stmt stmt = (Ast.Stmt) visit(statement);
+            if (stmt instanceof Ast.Stmt.If && isBoolean(((Ast.Stmt.If) stmt).getCondition())) {
+                Ast.Stmt.If ast = (Ast.Stmt.If) stmt;
+                List<Ast.Stmt> branch = (Boolean) ((Ast.Expr.Literal) ast.getCondition()).getLiteral() ? ast.getThenStatements() : ast.getElseStatements();
+                if (branch.stream().noneMatch(s -> s instanceof Ast.Stmt.Declaration)) {
+                    result.addAll(branch);
+                } else {
+                    result.add(new Ast.Stmt.If(literal(Boolean.TRUE, typeOf(ast.getCondition())), branch, new ArrayList<>()));
+                }
+            } else if (stmt instanceof Ast.Stmt.While && isBoolean(((Ast.Stmt.While) stmt).getCondition())
+                    && !(Boolean) ((Ast.Expr.Literal) ((Ast.Stmt.While) stmt).getCondition()).getLiteral()) {
+                continue;
+            } else {
+                result.add(stmt);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates {@code left operator right} the way the {@link Interpreter}
+     * would, returning null if it can't be folded.
+     */
+    private static Object fold(String operator, Object left, Object right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        switch (operator) {
+            case "AND":
+                return left instanceof Boolean && right instanceof Boolean ? (Boolean) left && (Boolean) right : null;
+            case "OR":
+                return left instanceof Boolean && right instanceof Boolean ? (Boolean) left || (Boolean) right : null;
+            case "==":
+                return left.equals(right);
+            case "!=":
+                return !left.equals(right);
+            case "<":
+            case ">":
+            case "<=":
+            case ">=":
+                Integer comparison = compare(left, right);
+                if (comparison == null) {
+                    return null;
+                }
+                return operator.equals("<") ? comparison < 0 : operator.equals(">") ? comparison > 0
+                        : operator.equals("<=") ? comparison <= 0 : comparison >= 0;
+            case "+":
+                if (left instanceof String || right instanceof String) {
+                    return left.toString() + right.toString();
+                }
+                return arithmetic(operator, left, right);
+            case "-":
+            case "*":
+            case "/":
+                return arithmetic(operator, left, right);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compares two literals of the same Comparable type, returning null for
+     * anything else (which the {@link Interpreter} rejects).
+     */
+    private static Integer compare(Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            return ((BigInteger) left).compareTo((BigInteger) right);
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            return ((BigDecimal) left).compareTo((BigDecimal) right);
+        } else if (left instanceof String && right instanceof String) {
+            return ((String) left).compareTo((String) right);
+        } else if (left instanceof Character && right instanceof Character) {
+            return ((Character) left).compareTo((Character) right);
+        }
+        return null;
+    }
+
+    private static Object arithmetic(String operator, Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            BigInteger a = (BigInteger) left;
+            BigInteger b = (BigInteger) right;
+            if (operator.equals("/") && b.signum() == 0) {
+                return null;
+            }
+            BigInteger result = operator.equals("+") ? a.add(b) : operator.equals("-") ? a.subtract(b)
+                    : operator.equals("*") ? a.multiply(b) : a.divide(b);
+            return result.compareTo(INT_MIN) >= 0 && result.compareTo(INT_MAX) <= 0 ? result : null;
+        } else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            BigDecimal a = (BigDecimal) left;
+            BigDecimal b = (BigDecimal) right;
+            if (operator.equals("/") && b.signum() == 0) {
+                return null;
+            }
+            return operator.equals("+") ? a.add(b) : operator.equals("-") ? a.subtract(b)
+                    : operator.equals("*") ? a.multiply(b) : a.divide(b, RoundingMode.HALF_EVEN);
+        }
+        return null;
+    }
+
+    /**
+     * Applies the algebraic identities, returning null if none applies. The
+     * operand that is kept must have the type the operator requires and can't
+     * be NIL, since the simplified expression no longer checks it: a typed
+     * variable or call can still be NIL at runtime, where {@code y + 0} fails
+     * but {@code y} doesn't.
+     */
+    private static Ast.Expr simplify(String operator, Ast.Expr left, Ast.Expr right) {
+        switch (operator) {
+            case "AND":
+                if (isBoolean(left)) {
+                    // FALSE AND x never evaluates x
+                    return (Boolean) ((Ast.Expr.Literal) left).getLiteral() ? typed(right, Environment.Type.BOOLEAN) : left;
+                }
+                return isLiteral(right, Boolean.TRUE) ? typed(left, Environment.Type.BOOLEAN) : null;
+            case "OR":
+                if (isBoolean(left)) {
+                    return (Boolean) ((Ast.Expr.Literal) left).getLiteral() ? left : typed(right, Environment.Type.BOOLEAN);
+                }
+                return isLiteral(right, Boolean.FALSE) ? typed(left, Environment.Type.BOOLEAN) : null;
+            case "+":
+                if (isLiteral(right, BigInteger.ZERO)) {
+                    return typed(left, Environment.Type.INTEGER);
+                } else if (isLiteral(left, BigInteger.ZERO)) {
+                    return typed(right, Environment.Type.INTEGER);
+                } else if (isLiteral(right, "")) {
+                    return typed(left, Environment.Type.STRING);
+                } else if (isLiteral(left, "")) {
+                    return typed(right, Environment.Type.STRING);
+                }
+                return null;
+            case "-":
+                return isLiteral(right, BigInteger.ZERO) ? typed(left, Environment.Type.INTEGER) : null;
+            case "*":
+                if (isLiteral(right, BigInteger.ONE)) {
+                    return typed(left, Environment.Type.INTEGER);
+                }
+                return isLiteral(left, BigInteger.ONE) ? typed(right, Environment.Type.INTEGER) : null;
+            case "/":
+                return isLiteral(right, BigInteger.ONE) ? typed(left, Environment.Type.INTEGER) : null;
+            default:
+                return null;
+        }
+    }
+
+    private static Ast.Expr typed(Ast.Expr expr, Environment.Type type) {
+        return typeOf(expr) == type && isValue(expr) ? expr : null;
+    }
+
+    /**
+     * Returns whether {@code expr} can't evaluate to NIL: a literal other than
+     * NIL, or a binary expression, which fails rather than produce NIL.
+     */
+    private static boolean isValue(Ast.Expr expr) {
+        if (expr instanceof Ast.Expr.Group) {
+            return isValue(((Ast.Expr.Group) expr).getExpression());
+        }
+        return expr instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expr).getLiteral() != null
+                || expr instanceof Ast.Expr.Binary;
+    }
+
+    private static boolean isBoolean(Ast.Expr expr) {
+        return expr instanceof Ast.Expr.Literal && ((Ast.Expr.Literal) expr).getLiteral() instanceof Boolean;
+    }
+
+    private static boolean isLiteral(Ast.Expr expr, Object value) {
+        return expr instanceof Ast.Expr.Literal && value.equals(((Ast.Expr.Literal) expr).getLiteral());
+    }
+
+    private static Ast.Expr.Literal literal(Object value, Environment.Type type) {
+        Ast.Expr.Literal literal = new Ast.Expr.Literal(value);
+        if (type != null) {
+            literal.setType(type);
+        }
+        return literal;
+    }
+
+    /*
+     * Analysis results throw if they were never set, these copy them only if
+     * they are there so unanalyzed programs can be optimized too.
+     */
+
+    private static Environment.Type typeOf(Ast.Expr expr) {
+        try {
+            return expr.getType();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static <T> void copy(Supplier<T> getter, Consumer<T> setter) {
+        try {
+            setter.accept(getter.get());
+        } catch (IllegalStateException e) {
+            // not analyzed
+        }
+    }
+
+}
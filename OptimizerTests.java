@@ -0,0 +1,100 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+public class OptimizerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        String expected = run(source, UnaryOperator.identity());
+        Assertions.assertEquals(expected, run(source, ast -> new Optimizer().visit(ast)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "DEF main(): Integer DO RETURN (1 + 2 * 3) * (4 - 1) / 2; END"),
+                Arguments.of("Concatenation", "DEF main(): Integer DO print(\"a\" + 1 + \"\"); RETURN 0; END"),
+                Arguments.of("Comparisons", "DEF main(): Integer DO print(\"a\" < \"b\"); print(2 >= 3); print(1 != 1); RETURN 0; END"),
+                Arguments.of("Constant If", "DEF main(): Integer DO LET x = 1; IF 1 < 2 DO LET y = 2; x = x + y; ELSE x = 0; END RETURN x; END"),
+                Arguments.of("Constant While", "DEF main(): Integer DO LET x = 1; WHILE 2 < 1 DO x = x + 1; END RETURN x; END"),
+                Arguments.of("Identities", "DEF main(): Integer DO LET x = 5; RETURN ((x * 2) + 0) * 1 - 0; END"),
+                Arguments.of("Boolean Identities", "DEF main(): Integer DO LET x = 5; IF (x > 2) AND TRUE DO RETURN 1; END RETURN 0; END"),
+                Arguments.of("Division By Zero", "DEF main(): Integer DO RETURN 1 / 0; END"),
+                Arguments.of("Nil Plus Zero", "LET y: Integer; DEF main(): Integer DO print(y + 0); RETURN 0; END"),
+                Arguments.of("Nil Times One", "LET y: Integer; DEF main(): Integer DO print(1 * y); RETURN 0; END"),
+                Arguments.of("Nil Minus Zero", "LET y: Integer; DEF main(): Integer DO print(y - 0); RETURN 0; END"),
+                Arguments.of("Nil Divided By One", "LET y: Integer; DEF main(): Integer DO print(y / 1); RETURN 0; END"),
+                Arguments.of("Nil Concatenation", "LET s: String; DEF main(): Integer DO print(s + \"\"); RETURN 0; END"),
+                Arguments.of("Nil And True", "LET b: Boolean; DEF main(): Integer DO print(b AND TRUE); RETURN 0; END")
+        );
+    }
+
+    @Test
+    void testFoldsLiterals() {
+        Ast.Expr value = returned("DEF main(): Integer DO RETURN (1 + 2 * 3) * (4 - 1); END");
+        Assertions.assertEquals(new Ast.Expr.Literal(BigInteger.valueOf(21)).getLiteral(), ((Ast.Expr.Literal) value).getLiteral());
+        Assertions.assertEquals(Environment.Type.INTEGER, value.getType());
+    }
+
+    @Test
+    void testKeepsIntegerOverflow() {
+        Ast.Expr value = returned("DEF main(): Integer DO RETURN 2147483647 + 1; END");
+        Assertions.assertTrue(value instanceof Ast.Expr.Binary);
+    }
+
+    @Test
+    void testSimplifiesBinaryOperand() {
+        Ast.Expr value = returned("DEF main(): Integer DO LET x = 5; RETURN (x * 2) + 0; END");
+        Assertions.assertTrue(value instanceof Ast.Expr.Group);
+        Assertions.assertEquals("*", ((Ast.Expr.Binary) ((Ast.Expr.Group) value).getExpression()).getOperator());
+    }
+
+    @Test
+    void testKeepsVariableOperand() {
+        Ast.Expr value = returned("DEF main(): Integer DO LET x = 5; RETURN x + 0; END");
+        Assertions.assertTrue(value instanceof Ast.Expr.Binary);
+    }
+
+    /**
+     * Returns the value of the last statement of the first method, which must
+     * be a RETURN, after optimizing.
+     */
+    private static Ast.Expr returned(String source) {
+        Ast.Source ast = new Optimizer().visit(analyze(source));
+        Ast.Method method = ast.getMethods().get(0);
+        return ((Ast.Stmt.Return) method.getStatements().get(method.getStatements().size() - 1)).getValue();
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} after {@code pass}, returning what it printed and
+     * its result or error.
+     */
+    private static String run(String source, UnaryOperator<Ast.Source> pass) {
+        Ast.Source ast = pass.apply(analyze(source));
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
@@ -0,0 +1,66 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Destination for the built-in {@code print} function. Lines are collected in
+ * a buffer and written out in one batch when the buffer reaches the
+ * threshold or when the script finishes, instead of taking a lock and
+ * flushing for every line. A sink belongs to a single run and isn't
+ * thread-safe.
+ */
+public final class OutputSink {
+
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Writer writer;
+    private final int threshold;
+    private final StringBuilder buffer = new StringBuilder();
+
+    public OutputSink(Writer writer) {
+        this(writer, DEFAULT_THRESHOLD);
+    }
+
+    public OutputSink(Writer writer, int threshold) {
+        this.writer = writer;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates a sink writing to {@link System#out}. The stream is looked up
+     * when flushing, so it follows {@link System#setOut}.
+     */
+    public static OutputSink standardOutput() {
+        return new OutputSink(null, DEFAULT_THRESHOLD);
+    }
+
+    public void println(Object value) {
+        buffer.append(value).append(LINE_SEPARATOR);
+        if (buffer.length() >= threshold) {
+            flush();
+        }
+    }
+
+    public void flush() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        if (writer == null) {
+            System.out.print(buffer);
+            System.out.flush();
+        } else {
+            try {
+                writer.append(buffer);
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        buffer.setLength(0);
+    }
+
+}
@@ -0,0 +1,78 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+public class OutputSinkTests {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    @Test
+    void testBuffered() {
+        StringWriter writer = new StringWriter();
+        OutputSink sink = new OutputSink(writer, 10);
+        sink.println("abc");
+        Assertions.assertEquals("", writer.toString());
+        sink.println("0123456789");
+        Assertions.assertEquals("abc" + LINE_SEPARATOR + "0123456789" + LINE_SEPARATOR, writer.toString());
+        sink.println(1);
+        sink.flush();
+        sink.flush();
+        Assertions.assertEquals("abc" + LINE_SEPARATOR + "0123456789" + LINE_SEPARATOR + "1" + LINE_SEPARATOR, writer.toString());
+    }
+
+    @Test
+    void testFlushedOnError() {
+        StringWriter writer = new StringWriter();
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer("DEF main(): Integer DO LET x = 0; print(1); RETURN 1 / x; END").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(writer));
+        Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        Assertions.assertEquals("1" + LINE_SEPARATOR, writer.toString());
+    }
+
+    @Test
+    void testStandardOutput() {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputSink sink = OutputSink.standardOutput();
+        sink.println("a");
+        try {
+            System.setOut(new PrintStream(bytes, true));
+            sink.flush();
+        } finally {
+            System.setOut(out);
+        }
+        Assertions.assertEquals("a" + LINE_SEPARATOR, bytes.toString());
+    }
+
+    @Test
+    void testWriteFailure() {
+        OutputSink sink = new OutputSink(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) throws IOException {
+                throw new IOException("closed");
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        sink.println("a");
+        UncheckedIOException e = Assertions.assertThrows(UncheckedIOException.class, sink::flush);
+        Assertions.assertEquals("closed", e.getCause().getMessage());
+    }
+
+}
@@ -0,0 +1,115 @@
+package plc.project;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+public class ParallelForTests {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void start() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stop() {
+        pool.shutdownNow();
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameAsSequential(String test, String source) {
+        Assertions.assertEquals(run(source, null), run(source, pool));
+    }
+
+    private static Stream<Arguments> testSameAsSequential() {
+        return Stream.of(
+                Arguments.of("Sum", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 100000) DO s = s + i; END RETURN s; END"),
+                Arguments.of("Product", "DEF main(): Integer DO LET p = 1; FOR i IN range(1, 3000) DO p = p * i; END print(p); RETURN 0; END"),
+                Arguments.of("Two Reductions", "DEF main(): Integer DO LET s = 0; LET q = 0; FOR i IN range(0, 50000) DO s = s + i; q = q + (i * i); END print(q); RETURN s; END"),
+                Arguments.of("Step", "DEF main(): Integer DO LET s = 0; FOR i IN range(5, 90000, 7) DO s = s + i; END RETURN s; END"),
+                Arguments.of("Negative Step", "DEF main(): Integer DO LET s = 0; FOR i IN range(90000, -5, -3) DO s = s + i; END RETURN s; END"),
+                Arguments.of("Pure Call", "DEF square(x: Integer): Integer DO RETURN x * x; END DEF main(): Integer DO LET s = 0; FOR i IN range(0, 20000) DO s = s + square(i); END RETURN s; END"),
+                Arguments.of("Local Variable", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 20000) DO LET d = i * 2; s = s + d; END RETURN s; END"),
+                Arguments.of("Nested", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 2000) DO FOR j IN range(0, 20) DO s = s + (i * j); END END RETURN s; END"),
+                Arguments.of("Below Threshold", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 10) DO s = s + i; END RETURN s; END"),
+                Arguments.of("Failing Iteration", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 20000) DO s = s + (100 / (i - 15000)); END RETURN s; END"),
+                Arguments.of("Nil Accumulator", "DEF main(): Integer DO LET s: Integer; FOR i IN range(0, 5000) DO s = s + i; END RETURN s; END"),
+                Arguments.of("Nil Contribution", "LET y: Integer; DEF main(): Integer DO LET s = 0; FOR i IN range(0, 5000) DO s = s + y; END RETURN s; END"),
+                Arguments.of("Nil Later Contribution", "LET y: Integer; DEF main(): Integer DO LET p = 1; FOR i IN range(0, 20000) DO LET d = 1; IF i == 15000 DO d = y; END p = p * d; END RETURN p; END")
+        );
+    }
+
+    @Test
+    void testIsParallel() {
+        Ast.Source ast = analyze("DEF main(): Integer DO LET s = 0; FOR i IN range(0, 100000) DO s = s + i; END RETURN s; END");
+        new Resolver().visit(ast);
+        Assertions.assertTrue(((Ast.Stmt.For) ast.getMethods().get(0).getStatements().get(1)).isParallel());
+    }
+
+    @Test
+    void testNilIsParallel() {
+        Ast.Source ast = analyze("LET y: Integer; DEF main(): Integer DO LET s = 0; FOR i IN range(0, 5000) DO s = s + y; END RETURN s; END");
+        new Resolver().visit(ast);
+        Assertions.assertTrue(((Ast.Stmt.For) ast.getMethods().get(0).getStatements().get(1)).isParallel());
+    }
+
+    @Test
+    void testInterrupted() throws InterruptedException {
+        Ast.Source ast = analyze("DEF main(): Integer DO LET s = 0; FOR i IN range(0, 2000000000) DO s = s + i; END RETURN s; END");
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(new StringWriter()));
+        interpreter.setForkJoinPool(pool);
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            try {
+                interpreter.visit(ast);
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        thread.start();
+        Thread.sleep(200);
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+        Assertions.assertFalse(thread.isAlive());
+        Assertions.assertTrue(thrown.get() instanceof ExecutionBudget.Exceeded, String.valueOf(thrown.get()));
+        Assertions.assertTrue(pool.awaitQuiescence(10, TimeUnit.SECONDS));
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+    /**
+     * Runs {@code source} on {@code pool}, or sequentially if it's null,
+     * returning what it printed and its result or error.
+     */
+    private static String run(String source, ForkJoinPool pool) {
+        Ast.Source ast = analyze(source);
+        StringWriter writer = new StringWriter();
+        Interpreter interpreter = new Interpreter(new Scope(null), new OutputSink(writer));
+        interpreter.setForkJoinPool(pool);
+        try {
+            Object result = interpreter.visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs a sequence of {@link IrPass}es over every function of an
+ * {@link Ir.Program}, repeating the sequence until none of them changes
+ * anything (or {@link #MAX_ROUNDS} is reached), since one pass often exposes
+ * work for another: folding a branch makes a block unreachable, removing it
+ * makes a phi trivial, and so on. The number of changes each pass made is
+ * kept for reporting.
+ */
+public final class PassManager {
+
+    public static final int MAX_ROUNDS = 8;
+
+    private final List<IrPass> passes = new ArrayList<>();
+    private final Map<String, Integer> changes = new LinkedHashMap<>();
+
+    /**
+     * Returns a manager with the standard passes, in the order they work best.
+     */
+    public static PassManager standard() {
+        return new PassManager()
+                .add(new ConstantFolding())
+                .add(new BranchFolding())
+                .add(new UnreachableBlockElimination())
+                .add(new TrivialPhiElimination())
+                .add(new DeadValueElimination());
+    }
+
+    public PassManager add(IrPass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public void run(Ir.Program program) {
+        run(program.getInitializer());
+        program.getFunctions().forEach(this::run);
+    }
+
+    public void run(Ir.Function function) {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            boolean changed = false;
+            for (IrPass pass : passes) {
+                if (pass.run(function)) {
+                    changes.merge(pass.getName(), 1, Integer::sum);
+                    changed = true;
+                }
+            }
+            if (!changed) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns how many times each pass changed a function, by name.
+     */
+    public Map<String, Integer> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Replaces binary operators on constants by their result, computed by the
+     * {@link Interpreter}'s own operator implementation. Integers are only
+     * folded if the result fits in the {@code int} the generated Java uses,
+     * and divisions by zero are left to fail at run time.
+     */
+    public static final class ConstantFolding implements IrPass {
+
+        @Override
+        public String getName() {
+            return "constant-folding";
+        }
+
+        @Override
+        public boolean run(Ir.Function function) {
+            boolean changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                ListIterator<Ir.Instruction> iterator = block.getInstructions().listIterator();
+                while (iterator.hasNext()) {
+                    Ir.Instruction instruction = iterator.next();
+                    if (!(instruction instanceof Ir.Binary)) {
+                        continue;
+                    }
+                    Ir.Binary binary = (Ir.Binary) instruction;
+                    if (!(binary.getLeft() instanceof Ir.Constant) || !(binary.getRight() instanceof Ir.Constant)) {
+                        continue;
+                    }
+                    Object result;
+                    try {
+                        result = Interpreter.binary(binary.getOperator(), ((Ir.Constant) binary.getLeft()).getObject(), ((Ir.Constant) binary.getRight()).getObject()).getValue();
+                    } catch (RuntimeException e) {
+                        // e.g. a division by zero, which has to fail when run
+                        continue;
+                    }
+                    if (Ir.fitsInt(result)) {
+                        Ir.Constant constant = function.number(new Ir.Constant(result, binary.getType()));
+                        iterator.set(constant);
+                        function.replaceAllUses(binary, constant);
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+
+    }
+
+    /**
+     * Turns branches on a constant condition into jumps.
+     */
+    public static final class BranchFolding implements IrPass {
+
+        @Override
+        public String getName() {
+            return "branch-folding";
+        }
+
+        @Override
+        public boolean run(Ir.Function function) {
+            boolean changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                if (block.getTerminator() instanceof Ir.Branch) {
+                    Ir.Branch branch = (Ir.Branch) block.getTerminator();
+                    if (branch.getCondition() instanceof Ir.Constant && ((Ir.Constant) branch.getCondition()).getLiteral() instanceof Boolean) {
+                        boolean condition = (Boolean) ((Ir.Constant) branch.getCondition()).getLiteral();
+                        block.setTerminator(new Ir.Jump(condition ? branch.getThen() : branch.getElse()));
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+
+    }
+
+    /**
+     * Removes the blocks that can't be reached from the entry.
+     */
+    public static final class UnreachableBlockElimination implements IrPass {
+
+        @Override
+        public String getName() {
+            return "unreachable-blocks";
+        }
+
+        @Override
+        public boolean run(Ir.Function function) {
+            Set<Ir.Block> reached = new HashSet<>();
+            Deque<Ir.Block> pending = new ArrayDeque<>();
+            pending.add(function.getEntry());
+            while (!pending.isEmpty()) {
+                Ir.Block block = pending.pop();
+                if (reached.add(block)) {
+                    pending.addAll(block.getTerminator().getSuccessors());
+                }
+            }
+            List<Ir.Block> unreachable = new ArrayList<>();
+            for (Ir.Block block : function.getBlocks()) {
+                if (!reached.contains(block)) {
+                    unreachable.add(block);
+                }
+            }
+            for (Ir.Block block : unreachable) {
+                for (Ir.Block successor : block.getTerminator().getSuccessors()) {
+                    if (reached.contains(successor)) {
+                        successor.removePredecessor(block);
+                    }
+                }
+            }
+            return function.getBlocks().removeAll(unreachable);
+        }
+
+    }
+
+    /**
+     * Replaces phis whose operands are all the same value (or the phi itself)
+     * by that value, e.g. after a predecessor was removed.
+     */
+    public static final class TrivialPhiElimination implements IrPass {
+
+        @Override
+        public String getName() {
+            return "trivial-phis";
+        }
+
+        @Override
+        public boolean run(Ir.Function function) {
+            boolean changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                for (Ir.Phi phi : new ArrayList<>(block.getPhis())) {
+                    Ir.Value same = null;
+                    boolean trivial = true;
+                    for (Ir.Value operand : phi.getOperands()) {
+                        if (operand == phi || operand == same) {
+                            continue;
+                        } else if (same != null) {
+                            trivial = false;
+                            break;
+                        }
+                        same = operand;
+                    }
+                    if (trivial && same != null) {
+                        block.getPhis().remove(phi);
+                        function.replaceAllUses(phi, same);
+                        changed = true;
+                    }
+                }
+            }
+            return changed;
+        }
+
+    }
+
+    /**
+     * Removes phis and instructions without effects whose values are unused.
+     */
+    public static final class DeadValueElimination implements IrPass {
+
+        @Override
+        public String getName() {
+            return "dead-values";
+        }
+
+        @Override
+        public boolean run(Ir.Function function) {
+            Set<Ir.Value> used = new HashSet<>();
+            for (Ir.Block block : function.getBlocks()) {
+                block.getPhis().forEach(phi -> used.addAll(phi.getOperands()));
+                block.getInstructions().forEach(instruction -> used.addAll(instruction.getOperands()));
+                used.addAll(block.getTerminator().getOperands());
+            }
+            boolean changed = false;
+            for (Ir.Block block : function.getBlocks()) {
+                changed |= block.getPhis().removeIf(phi -> !function.isUsed(phi));
+                changed |= block.getInstructions().removeIf(instruction -> !instruction.hasEffect() && !used.contains(instruction));
+            }
+            return changed;
+        }
+
+    }
+
+}
@@ -0,0 +1,257 @@
+package plc.project;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An {@link Interpreter} that records, for every DEF method and every
+ * statement, how often it ran, its total and self time and the bytes it
+ * allocated. It is a separate visitor so the plain interpreter carries no
+ * profiling checks at all.
+ * <p>
+ * Time and allocation are attributed along the call tree of methods and
+ * statements; {@link #writeCollapsedStacks(Writer)} exports it in the
+ * collapsed stack format read by flame graph tools ({@code a;b;c 1234}, one
+ * line per stack, weighted by self time in nanoseconds).
+ * <p>
+ * Only the activations that actually run are recorded: a call answered by the
+ * {@link MemoCache} isn't one, and a tail call replaces its caller, so it shows
+ * up under the caller's parent like on the stack it runs on.
+ */
+public final class ProfilingInterpreter extends Interpreter {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<Ast.Method, Profile> methods = new LinkedHashMap<>();
+    private final Map<Ast.Stmt, Profile> statements = new IdentityHashMap<>();
+    private final Map<Ast.Stmt, String> labels = new IdentityHashMap<>();
+    private final Node root = new Node(null, "all");
+    private final Deque<Entry> stack = new ArrayDeque<>();
+    private Node current = root;
+
+    public ProfilingInterpreter(Scope parent) {
+        this(parent, OutputSink.standardOutput());
+    }
+
+    /**
+     * Creates a profiling interpreter. Parallel FOR loops run sequentially, so
+     * that all of their work is attributed to the loop.
+     */
+    public ProfilingInterpreter(Scope parent, OutputSink output) {
+        super(parent, output);
+        setForkJoinPool(null);
+    }
+
+    @Override
+    public Environment.PlcObject visit(Ast ast) {
+        if (!(ast instanceof Ast.Stmt)) {
+            return super.visit(ast);
+        }
+        Ast.Stmt stmt = (Ast.Stmt) ast;
+        enter(statements.computeIfAbsent(stmt, key -> new Profile(labels.getOrDefault(key, key.getClass().getSimpleName()))));
+        try {
+            return super.visit(ast);
+        } finally {
+            exit();
+        }
+    }
+
+    @Override
+    protected Environment.PlcObject activate(Ast.Method ast, Scope definition, Frame callee) {
+        Profile profile = methods.get(ast);
+        if (profile == null) {
+            profile = new Profile(ast.getName());
+            methods.put(ast, profile);
+            label(ast.getName(), ast.getStatements(), new int[] {0});
+        }
+        enter(profile);
+        try {
+            return super.activate(ast, definition, callee);
+        } finally {
+            exit();
+        }
+    }
+
+    public List<Profile> getMethodProfiles() {
+        return new ArrayList<>(methods.values());
+    }
+
+    public List<Profile> getStatementProfiles() {
+        return new ArrayList<>(statements.values());
+    }
+
+    public void writeCollapsedStacks(Writer writer) {
+        try {
+            for (Node child : root.children.values()) {
+                write(writer, child, child.name);
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(Writer writer, Node node, String path) throws IOException {
+        if (node.selfNanos > 0) {
+            writer.write(path + " " + node.selfNanos + "\n");
+        }
+        for (Node child : node.children.values()) {
+            write(writer, child, path + ";" + child.name);
+        }
+    }
+
+    /**
+     * Names the statements of a method by kind and their preorder position, so
+     * that e.g. the second loop in {@code main} shows up as
+     * {@code main:While#4}.
+     */
+    private void label(String method, List<Ast.Stmt> statements, int[] counter) {
+        for (Ast.Stmt stmt : statements) {
+            labels.put(stmt, method + ":" + stmt.getClass().getSimpleName() + "#" + counter[0]++);
+            if (stmt instanceof Ast.Stmt.If) {
+                label(method, ((Ast.Stmt.If) stmt).getThenStatements(), counter);
+                label(method, ((Ast.Stmt.If) stmt).getElseStatements(), counter);
+            } else if (stmt instanceof Ast.Stmt.For) {
+                label(method, ((Ast.Stmt.For) stmt).getStatements(), counter);
+            } else if (stmt instanceof Ast.Stmt.While) {
+                label(method, ((Ast.Stmt.While) stmt).getStatements(), counter);
+            }
+        }
+    }
+
+    private void enter(Profile profile) {
+        current = current.child(profile.name);
+        profile.active++;
+        stack.push(new Entry(profile, System.nanoTime(), allocatedBytes()));
+    }
+
+    private void exit() {
+        long nanos = System.nanoTime();
+        long bytes = allocatedBytes();
+        Entry entry = stack.pop();
+        long elapsed = nanos - entry.startNanos;
+        long allocated = bytes - entry.startBytes;
+        long selfNanos = elapsed - entry.childNanos;
+        long selfBytes = allocated - entry.childBytes;
+        if (!stack.isEmpty()) {
+            stack.peek().childNanos += elapsed;
+            stack.peek().childBytes += allocated;
+        }
+
+        Profile profile = entry.profile;
+        profile.count++;
+        profile.selfNanos += selfNanos;
+        profile.selfBytes += selfBytes;
+        // recursive activations are already inside the outermost one's total
+        if (--profile.active == 0) {
+            profile.totalNanos += elapsed;
+            profile.totalBytes += allocated;
+        }
+        current.selfNanos += selfNanos;
+        current = current.parent;
+    }
+
+    private static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    public static final class Profile {
+
+        private final String name;
+        private long count = 0;
+        private long totalNanos = 0;
+        private long selfNanos = 0;
+        private long totalBytes = 0;
+        private long selfBytes = 0;
+        private int active = 0;
+
+        private Profile(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getSelfNanos() {
+            return selfNanos;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getSelfBytes() {
+            return selfBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile{" +
+                    "name='" + name + '\'' +
+                    ", count=" + count +
+                    ", totalNanos=" + totalNanos +
+                    ", selfNanos=" + selfNanos +
+                    ", totalBytes=" + totalBytes +
+                    ", selfBytes=" + selfBytes +
+                    '}';
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final Profile profile;
+        private final long startNanos;
+        private final long startBytes;
+        private long childNanos = 0;
+        private long childBytes = 0;
+
+        private Entry(Profile profile, long startNanos, long startBytes) {
+            this.profile = profile;
+            this.startNanos = startNanos;
+            this.startBytes = startBytes;
+        }
+
+    }
+
+    private static final class Node {
+
+        private final Node parent;
+        private final String name;
+        private final Map<String, Node> children = new LinkedHashMap<>();
+        private long selfNanos = 0;
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private Node child(String name) {
+            return children.computeIfAbsent(name, key -> new Node(this, key));
+        }
+
+    }
+
+}
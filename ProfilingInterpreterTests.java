@@ -0,0 +1,93 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.List;
+
+public class ProfilingInterpreterTests {
+
+    @Test
+    void testMethodCounts() {
+        ProfilingInterpreter interpreter = run("DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main(): Integer DO LET r = fib(10); RETURN r; END", BigInteger.valueOf(55), new MemoCache(0));
+        Assertions.assertEquals(1, profile(interpreter.getMethodProfiles(), "main").getCount());
+        Assertions.assertEquals(177, profile(interpreter.getMethodProfiles(), "fib").getCount());
+    }
+
+    @Test
+    void testMemoizedCounts() {
+        ProfilingInterpreter interpreter = run("DEF fib(n: Integer): Integer DO IF n < 2 DO RETURN n; END RETURN fib(n - 1) + fib(n - 2); END DEF main(): Integer DO LET r = fib(10); RETURN r; END", BigInteger.valueOf(55));
+        Assertions.assertEquals(11, profile(interpreter.getMethodProfiles(), "fib").getCount());
+    }
+
+    @Test
+    void testTailCallCounts() {
+        ProfilingInterpreter interpreter = run("DEF count(n: Integer, s: Integer): Integer DO IF n == 0 DO RETURN s; END RETURN count(n - 1, s + n); END DEF main(): Integer DO RETURN count(100, 0); END", BigInteger.valueOf(5050));
+        Assertions.assertEquals(101, profile(interpreter.getMethodProfiles(), "count").getCount());
+    }
+
+    @Test
+    void testStatementCounts() {
+        ProfilingInterpreter interpreter = run("DEF main(): Integer DO LET s = 0; FOR i IN range(0, 10) DO s = s + i; END RETURN s; END", BigInteger.valueOf(45));
+        Assertions.assertEquals(1, profile(interpreter.getStatementProfiles(), "main:For#1").getCount());
+        Assertions.assertEquals(10, profile(interpreter.getStatementProfiles(), "main:Assignment#2").getCount());
+        Assertions.assertEquals(1, profile(interpreter.getStatementProfiles(), "main:Return#3").getCount());
+    }
+
+    @Test
+    void testTimes() {
+        ProfilingInterpreter interpreter = run("DEF f(n: Integer): Integer DO IF n == 0 DO RETURN 0; END RETURN 1 + f(n - 1); END DEF main(): Integer DO LET r = f(50); RETURN r; END", BigInteger.valueOf(50));
+        ProfilingInterpreter.Profile main = profile(interpreter.getMethodProfiles(), "main");
+        ProfilingInterpreter.Profile f = profile(interpreter.getMethodProfiles(), "f");
+        Assertions.assertTrue(main.getTotalNanos() >= f.getTotalNanos());
+        Assertions.assertTrue(f.getTotalNanos() >= f.getSelfNanos());
+        Assertions.assertTrue(main.getTotalNanos() >= main.getSelfNanos());
+    }
+
+    @Test
+    void testCollapsedStacks() {
+        ProfilingInterpreter interpreter = run("DEF f(): Integer DO LET i = 0; WHILE i < 1000 DO i = i + 1; END RETURN i; END DEF main(): Integer DO LET r = f(); RETURN r; END", BigInteger.valueOf(1000));
+        StringWriter writer = new StringWriter();
+        interpreter.writeCollapsedStacks(writer);
+        String[] lines = writer.toString().split("\n");
+        Assertions.assertTrue(lines.length > 0);
+        boolean loop = false;
+        for (String line : lines) {
+            Assertions.assertTrue(line.matches("main(;[^; ]+)* \\d+"), line);
+            loop |= line.startsWith("main;main:Declaration#0;f;f:While#1");
+        }
+        Assertions.assertTrue(loop, writer.toString());
+    }
+
+    @Test
+    void testTailCallStacks() {
+        ProfilingInterpreter interpreter = run("DEF f(): Integer DO LET i = 0; WHILE i < 1000 DO i = i + 1; END RETURN i; END DEF main(): Integer DO RETURN f(); END", BigInteger.valueOf(1000));
+        StringWriter writer = new StringWriter();
+        interpreter.writeCollapsedStacks(writer);
+        Assertions.assertTrue(writer.toString().contains("\nf;f:While#1") || writer.toString().startsWith("f;f:While#1"), writer.toString());
+    }
+
+    private static ProfilingInterpreter run(String source, BigInteger expected) {
+        return run(source, expected, null);
+    }
+
+    private static ProfilingInterpreter run(String source, BigInteger expected, MemoCache memo) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        ProfilingInterpreter interpreter = new ProfilingInterpreter(new Scope(null), new OutputSink(new StringWriter()));
+        if (memo != null) {
+            interpreter.setMemoCache(memo);
+        }
+        Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        return interpreter;
+    }
+
+    private static ProfilingInterpreter.Profile profile(List<ProfilingInterpreter.Profile> profiles, String name) {
+        return profiles.stream().filter(profile -> profile.getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("No profile " + name + " in " + profiles + "."));
+    }
+
+}
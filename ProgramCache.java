@@ -0,0 +1,189 @@
+package plc.project;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+
+/**
+ * A bounded LRU cache from the SHA-256 hash of a program's source to its
+ * analyzed {@link Ast.Source}, so resubmitting the same script skips the
+ * lexer, parser and analyzer. The programs returned are already resolved and
+ * can be handed straight to {@link ScriptService}.
+ * <p>
+ * If a {@link ProgramStore} is given, misses are looked up there before
+ * compiling, and newly compiled programs are saved to it.
+ * <p>
+ * The memory budget is in (estimated) bytes. An AST takes roughly
+ * {@link #BYTES_PER_CHARACTER} bytes per character of source once tokens,
+ * nodes and analysis results are counted, which is what entries are weighed
+ * by.
+ */
+public final class ProgramCache {
+
+    public static final int BYTES_PER_CHARACTER = 48;
+
+    // the lexer keeps static state, so compiles can't run concurrently
+    private static final Object COMPILE_LOCK = new Object();
+
+    private final long maximumWeight;
+    private final ProgramStore store;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ProgramCache(long maximumWeight) {
+        this(maximumWeight, null);
+    }
+
+    public ProgramCache(long maximumWeight, ProgramStore store) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        this.maximumWeight = maximumWeight;
+        this.store = store;
+    }
+
+    /**
+     * Returns the analyzed program for {@code source}, compiling and caching it
+     * if it hasn't been seen (or has been evicted).
+     */
+    public Ast.Source get(String source) {
+        String key = hash(source);
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.program;
+            }
+            misses++;
+        }
+        Ast.Source program = load(source);
+        long size = (long) source.length() * BYTES_PER_CHARACTER;
+        synchronized (this) {
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                return existing.program;
+            }
+            if (size <= maximumWeight) {
+                entries.put(key, new Entry(program, size));
+                weight += size;
+                evict();
+            }
+        }
+        return program;
+    }
+
+    public synchronized void invalidateAll() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    private Ast.Source load(String source) {
+        if (store == null) {
+            return compile(source);
+        }
+        Optional<Ast.Source> stored = store.load(source);
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+        Ast.Source program = compile(source);
+        store.save(source, program);
+        return program;
+    }
+
+    /**
+     * Runs the front end (lexer, parser, analyzer), inlines small methods,
+     * optimizes the result, hoists loop invariants and shares repeated
+     * expressions, drops the code {@code main} can't reach and resolves
+     * what's left.
+     */
+    public static Ast.Source compile(String source) {
+        synchronized (COMPILE_LOCK) {
+            Lexer.reset();
+            Ast.Source program = new Parser(new Lexer(source).lex()).parseSource();
+            new Analyzer(new Scope(null)).visit(program);
+            program = new Optimizer().visit(new Inliner().visit(program));
+            program = new LoopInvariantHoister().visit(program);
+            program = new CommonSubexpressionEliminator().visit(program);
+            program = new DeadCodeEliminator().eliminate(program);
+            new Resolver().visit(program);
+            return program;
+        }
+    }
+
+    public static String hash(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is always available.", e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (weight > maximumWeight && iterator.hasNext()) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ProgramCache{" +
+                "size=" + entries.size() +
+                ", weight=" + weight +
+                ", maximumWeight=" + maximumWeight +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", evictions=" + evictions +
+                '}';
+    }
+
+    private static final class Entry {
+
+        private final Ast.Source program;
+        private final long weight;
+
+        private Entry(Ast.Source program, long weight) {
+            this.program = program;
+            this.weight = weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.stream.Stream;
+
+public class ProgramCacheTests {
+
+    private static final String PROGRAM = "DEF main(): Integer DO RETURN 1; END";
+
+    @ParameterizedTest
+    @MethodSource
+    void testSameBehaviour(String test, String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertEquals(run(ast), run(ProgramCache.compile(source)));
+    }
+
+    private static Stream<Arguments> testSameBehaviour() {
+        return Stream.of(
+                Arguments.of("Arithmetic", "DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO LET x = 3; RETURN square(x + 1) + (2 * 3); END"),
+                Arguments.of("Loop", "LET k: Integer = 3; DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 10 DO s = s + ((k * 2) + i); i = i + 1; END RETURN s; END"),
+                Arguments.of("Unused Method", "DEF unused(): Integer DO RETURN 1 / 0; END DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Nil Field In Loop", "LET y: Integer; DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 10 DO IF y != NIL DO s = s + (y * 2); END i = i + 1; END RETURN s; END"),
+                Arguments.of("Nil Field Zero Iterations", "LET y: Integer; DEF main(): Integer DO LET s = 0; LET i = 0; WHILE i < 0 DO s = s + (y * 2); i = i + 1; END RETURN s; END"),
+                Arguments.of("Nil Under And", "LET y: Integer; DEF main(): Integer DO LET x = 1; print((x > 2) AND ((y * 2) > 1)); print((y * 2) > 1); RETURN 0; END"),
+                Arguments.of("Nil Identity", "LET y: Integer; DEF main(): Integer DO print(y + 0); RETURN 0; END"),
+                Arguments.of("Nil Unused Field", "LET y: Integer; LET z: Integer = y + 1; DEF main(): Integer DO RETURN 0; END"),
+                Arguments.of("Nil Unused Argument", "LET y: Integer; DEF zero(n: Integer): Integer DO RETURN 0; END DEF main(): Integer DO RETURN zero(y * 2); END"),
+                Arguments.of("Division By Zero", "DEF main(): Integer DO LET x = 0; print(1); RETURN 1 / x; END")
+        );
+    }
+
+    @Test
+    void testHitsAndMisses() {
+        ProgramCache cache = new ProgramCache(1 << 20);
+        Ast.Source first = cache.get(PROGRAM);
+        Assertions.assertSame(first, cache.get(PROGRAM));
+        cache.get("DEF main(): Integer DO RETURN 2; END");
+        Assertions.assertEquals(1, cache.getHits());
+        Assertions.assertEquals(2, cache.getMisses());
+        Assertions.assertEquals(2, cache.getSize());
+        Assertions.assertTrue(first.getMethods().get(0).getFrameSize() >= 0);
+    }
+
+    @Test
+    void testEviction() {
+        long size = (long) PROGRAM.length() * ProgramCache.BYTES_PER_CHARACTER;
+        ProgramCache cache = new ProgramCache(2 * size);
+        cache.get(PROGRAM);
+        cache.get("DEF main(): Integer DO RETURN 2; END");
+        cache.get(PROGRAM);
+        cache.get("DEF main(): Integer DO RETURN 3; END");
+        Assertions.assertEquals(1, cache.getEvictions());
+        Assertions.assertEquals(2 * size, cache.getWeight());
+        // the least recently used program was evicted, not the first one added
+        cache.get(PROGRAM);
+        Assertions.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    void testTooLarge() {
+        ProgramCache cache = new ProgramCache(PROGRAM.length());
+        Assertions.assertNotNull(cache.get(PROGRAM));
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    void testInvalidateAll() {
+        ProgramCache cache = new ProgramCache(1 << 20);
+        Ast.Source first = cache.get(PROGRAM);
+        cache.invalidateAll();
+        Assertions.assertEquals(0, cache.getSize());
+        Assertions.assertNotSame(first, cache.get(PROGRAM));
+        Assertions.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testInvalid() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ProgramCache(0));
+        ProgramCache cache = new ProgramCache(1 << 20);
+        Assertions.assertThrows(RuntimeException.class, () -> cache.get("DEF main(): Integer DO RETURN TRUE; END"));
+        Assertions.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void testHash() {
+        Assertions.assertEquals(64, ProgramCache.hash(PROGRAM).length());
+        Assertions.assertEquals(ProgramCache.hash(PROGRAM), ProgramCache.hash(new String(PROGRAM)));
+        Assertions.assertNotEquals(ProgramCache.hash(PROGRAM), ProgramCache.hash(PROGRAM + " "));
+    }
+
+    /**
+     * Runs {@code ast}, returning what it printed and its result or error.
+     */
+    private static String run(Ast.Source ast) {
+        StringWriter writer = new StringWriter();
+        try {
+            Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+            return writer + "result: " + result;
+        } catch (RuntimeException e) {
+            return writer + "error: " + e.getMessage();
+        }
+    }
+
+}
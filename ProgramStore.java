@@ -0,0 +1,640 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Persists analyzed programs in a local directory so a restarted service can
+ * load them instead of running the front end again. Each program is stored in
+ * its own file named after the {@link ProgramCache#hash(String)} of its
+ * source, in a compact binary form of the {@link Ast}. The analysis results
+ * ({@link Environment.Variable}s, {@link Environment.Function}s, expression
+ * types, resolved slots, purity and parallel loops) are stored by name and
+ * type and rebuilt on load.
+ * <p>
+ * Files start with a magic number, a format {@link #VERSION} and a CRC32 of
+ * the payload. Files from another version, or ones that fail the checksum,
+ * are ignored and get overwritten the next time the program is saved.
+ */
+public final class ProgramStore {
+
+    public static final int MAGIC = 0x504C4343;
+    public static final int VERSION = 3;
+
+    private static final String EXTENSION = ".plcc";
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    private final Path directory;
+
+    public ProgramStore(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads the stored program for {@code source}, if there is a valid one.
+     */
+    public Optional<Ast.Source> load(String source) {
+        Path path = directory.resolve(ProgramCache.hash(source) + EXTENSION);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return Optional.empty();
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return Optional.empty();
+            }
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length != buffer.remaining()) {
+                return Optional.empty();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate());
+            if (crc.getValue() != checksum) {
+                return Optional.empty();
+            }
+            return Optional.of(new Reader(buffer).readSource());
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // a payload we can't make sense of is treated like a missing file
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores {@code program} as the compiled form of {@code source}. The file is
+     * written under a temporary name and moved into place, so readers never
+     * see a partial file.
+     */
+    public void save(String source, Ast.Source program) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new Writer(new DataOutputStream(payload)).visit(program);
+        byte[] bytes = payload.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(bytes.length).putLong(crc.getValue());
+
+        String name = ProgramCache.hash(source);
+        Path path = directory.resolve(name + EXTENSION);
+        try {
+            Path temp = Files.createTempFile(directory, name, ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                header.flip();
+                channel.write(new ByteBuffer[] {header, ByteBuffer.wrap(bytes)});
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // node tags
+    private static final byte FIELD = 1;
+    private static final byte METHOD = 2;
+    private static final byte EXPRESSION = 3;
+    private static final byte DECLARATION = 4;
+    private static final byte ASSIGNMENT = 5;
+    private static final byte IF = 6;
+    private static final byte FOR = 7;
+    private static final byte WHILE = 8;
+    private static final byte RETURN = 9;
+    private static final byte LITERAL = 10;
+    private static final byte GROUP = 11;
+    private static final byte BINARY = 12;
+    private static final byte ACCESS = 13;
+    private static final byte FUNCTION = 14;
+
+    // literal tags
+    private static final byte NIL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte INTEGER = 2;
+    private static final byte DECIMAL = 3;
+    private static final byte CHARACTER = 4;
+    private static final byte STRING = 5;
+
+    private static final class Writer implements Ast.Visitor<Void> {
+
+        private final DataOutputStream out;
+
+        private Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public Void visit(Ast.Source ast) {
+            writeList(ast.getFields());
+            writeList(ast.getMethods());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Field ast) {
+            writeByte(FIELD);
+            writeString(ast.getName());
+            writeString(ast.getTypeName());
+            writeOptional(ast.getValue());
+            writeVariable(variableOf(() -> ast.getVariable()));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Method ast) {
+            writeByte(METHOD);
+            writeString(ast.getName());
+            writeStrings(ast.getParameters());
+            writeStrings(ast.getParameterTypeNames());
+            writeOptionalString(ast.getReturnTypeName());
+            writeList(ast.getStatements());
+            writeFunction(functionOf(() -> ast.getFunction()));
+            writeInt(ast.getFrameSize());
+            writeByte((byte) (ast.isPure() ? 1 : 0));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Expression ast) {
+            writeByte(EXPRESSION);
+            visit(ast.getExpression());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Declaration ast) {
+            writeByte(DECLARATION);
+            writeString(ast.getName());
+            writeOptionalString(ast.getTypeName());
+            writeOptional(ast.getValue());
+            writeVariable(variableOf(() -> ast.getVariable()));
+            writeInt(ast.getSlot());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Assignment ast) {
+            writeByte(ASSIGNMENT);
+            visit(ast.getReceiver());
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.If ast) {
+            writeByte(IF);
+            visit(ast.getCondition());
+            writeList(ast.getThenStatements());
+            writeList(ast.getElseStatements());
+            writeInt(ast.getThenFrameSize());
+            writeInt(ast.getElseFrameSize());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.For ast) {
+            writeByte(FOR);
+            writeString(ast.getName());
+            visit(ast.getValue());
+            writeList(ast.getStatements());
+            writeInt(ast.getFrameSize());
+            // reductions are written as their position among the body's assignments
+            if (ast.isParallel()) {
+                List<Ast.Stmt.Assignment> assignments = assignments(ast.getStatements(), new ArrayList<>());
+                writeInt(ast.getReductions().size());
+                ast.getReductions().forEach(reduction -> writeInt(assignments.indexOf(reduction)));
+            } else {
+                writeInt(-1);
+            }
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.While ast) {
+            writeByte(WHILE);
+            visit(ast.getCondition());
+            writeList(ast.getStatements());
+            writeInt(ast.getFrameSize());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Stmt.Return ast) {
+            writeByte(RETURN);
+            visit(ast.getValue());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Literal ast) {
+            writeByte(LITERAL);
+            Object literal = ast.getLiteral();
+            if (literal == null || literal == Environment.NIL) {
+                writeByte(NIL);
+            } else if (literal instanceof Boolean) {
+                writeByte(BOOLEAN);
+                writeByte((byte) ((Boolean) literal ? 1 : 0));
+            } else if (literal instanceof BigInteger) {
+                writeByte(INTEGER);
+                writeBytes(((BigInteger) literal).toByteArray());
+            } else if (literal instanceof BigDecimal) {
+                writeByte(DECIMAL);
+                writeString(literal.toString());
+            } else if (literal instanceof Character) {
+                writeByte(CHARACTER);
+                writeInt((Character) literal);
+            } else if (literal instanceof String) {
+                writeByte(STRING);
+                writeString((String) literal);
+            } else {
+                throw new IllegalArgumentException("Unsupported literal " + literal.getClass().getName() + ".");
+            }
+            writeType(typeOf(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Group ast) {
+            writeByte(GROUP);
+            visit(ast.getExpression());
+            writeType(typeOf(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Binary ast) {
+            writeByte(BINARY);
+            writeString(ast.getOperator());
+            visit(ast.getLeft());
+            visit(ast.getRight());
+            writeType(typeOf(ast::getType));
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Access ast) {
+            writeByte(ACCESS);
+            writeOptional(ast.getReceiver());
+            writeString(ast.getName());
+            writeVariable(variableOf(() -> ast.getVariable()));
+            writeInt(ast.getDepth());
+            writeInt(ast.getSlot());
+            return null;
+        }
+
+        @Override
+        public Void visit(Ast.Expr.Function ast) {
+            writeByte(FUNCTION);
+            writeOptional(ast.getReceiver());
+            writeString(ast.getName());
+            writeList(ast.getArguments());
+            writeFunction(functionOf(() -> ast.getFunction()));
+            return null;
+        }
+
+        private void writeVariable(Environment.Variable variable) {
+            writeByte((byte) (variable == null ? 0 : 1));
+            if (variable != null) {
+                writeString(variable.getName());
+                writeString(variable.getJvmName());
+                writeType(variable.getType());
+            }
+        }
+
+        private void writeFunction(Environment.Function function) {
+            writeByte((byte) (function == null ? 0 : 1));
+            if (function != null) {
+                writeString(function.getName());
+                writeString(function.getJvmName());
+                writeInt(function.getParameterTypes().size());
+                function.getParameterTypes().forEach(this::writeType);
+                writeType(function.getReturnType());
+            }
+        }
+
+        private void writeType(Environment.Type type) {
+            writeByte((byte) (type == null ? 0 : 1));
+            if (type != null) {
+                writeString(type.getName());
+            }
+        }
+
+        private void writeList(List<? extends Ast> asts) {
+            writeInt(asts.size());
+            asts.forEach(this::visit);
+        }
+
+        private void writeOptional(Optional<? extends Ast> ast) {
+            writeByte((byte) (ast.isPresent() ? 1 : 0));
+            ast.ifPresent(this::visit);
+        }
+
+        private void writeStrings(List<String> strings) {
+            writeInt(strings.size());
+            strings.forEach(this::writeString);
+        }
+
+        private void writeOptionalString(Optional<String> string) {
+            writeByte((byte) (string.isPresent() ? 1 : 0));
+            string.ifPresent(this::writeString);
+        }
+
+        private void writeString(String string) {
+            writeBytes(string.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeInt(bytes.length);
+            try {
+                out.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeByte(byte value) {
+            try {
+                out.writeByte(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final ByteBuffer in;
+
+        private Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        private Ast.Source readSource() {
+            List<Ast.Field> fields = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                fields.add((Ast.Field) readAst());
+            }
+            List<Ast.Method> methods = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                methods.add((Ast.Method) readAst());
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalStateException("Trailing bytes after the program.");
+            }
+            return new Ast.Source(fields, methods);
+        }
+
+        private Ast readAst() {
+            byte tag = in.get();
+            switch (tag) {
+                case FIELD: {
+                    Ast.Field field = new Ast.Field(readString(), readString(), readOptional());
+                    readVariable().ifPresent(field::setVariable);
+                    return field;
+                }
+                case METHOD: {
+                    Ast.Method method = new Ast.Method(readString(), readStrings(), readStrings(), readOptionalString(), readList());
+                    readFunction().ifPresent(method::setFunction);
+                    method.setFrameSize(in.getInt());
+                    method.setPure(in.get() != 0);
+                    return method;
+                }
+                case EXPRESSION:
+                    return new Ast.Stmt.Expression(readExpr());
+                case DECLARATION: {
+                    Ast.Stmt.Declaration declaration = new Ast.Stmt.Declaration(readString(), readOptionalString(), readOptional());
+                    readVariable().ifPresent(declaration::setVariable);
+                    declaration.setSlot(in.getInt());
+                    return declaration;
+                }
+                case ASSIGNMENT:
+                    return new Ast.Stmt.Assignment(readExpr(), readExpr());
+                case IF: {
+                    Ast.Stmt.If ast = new Ast.Stmt.If(readExpr(), readList(), readList());
+                    ast.setFrameSizes(in.getInt(), in.getInt());
+                    return ast;
+                }
+                case FOR: {
+                    Ast.Stmt.For ast = new Ast.Stmt.For(readString(), readExpr(), readList());
+                    ast.setFrameSize(in.getInt());
+                    int reductions = in.getInt();
+                    if (reductions >= 0) {
+                        List<Ast.Stmt.Assignment> assignments = assignments(ast.getStatements(), new ArrayList<>());
+                        List<Ast.Stmt.Assignment> parallel = new ArrayList<>();
+                        for (int i = 0; i < reductions; i++) {
+                            parallel.add(assignments.get(in.getInt()));
+                        }
+                        ast.setReductions(parallel);
+                    }
+                    return ast;
+                }
+                case WHILE: {
+                    Ast.Stmt.While ast = new Ast.Stmt.While(readExpr(), readList());
+                    ast.setFrameSize(in.getInt());
+                    return ast;
+                }
+                case RETURN:
+                    return new Ast.Stmt.Return(readExpr());
+                case LITERAL: {
+                    Ast.Expr.Literal literal = new Ast.Expr.Literal(readLiteral());
+                    readType().ifPresent(literal::setType);
+                    return literal;
+                }
+                case GROUP: {
+                    Ast.Expr.Group group = new Ast.Expr.Group(readExpr());
+                    readType().ifPresent(group::setType);
+                    return group;
+                }
+                case BINARY: {
+                    Ast.Expr.Binary binary = new Ast.Expr.Binary(readString(), readExpr(), readExpr());
+                    readType().ifPresent(binary::setType);
+                    return binary;
+                }
+                case ACCESS: {
+                    Ast.Expr.Access access = new Ast.Expr.Access(readOptional(), readString());
+                    readVariable().ifPresent(access::setVariable);
+                    access.setAddress(in.getInt(), in.getInt());
+                    return access;
+                }
+                case FUNCTION: {
+                    Ast.Expr.Function function = new Ast.Expr.Function(readOptional(), readString(), readList());
+                    readFunction().ifPresent(function::setFunction);
+                    return function;
+                }
+                default:
+                    throw new IllegalStateException("Unknown node tag " + tag + ".");
+            }
+        }
+
+        private Object readLiteral() {
+            byte tag = in.get();
+            switch (tag) {
+                case NIL:
+                    return null;
+                case BOOLEAN:
+                    return in.get() != 0;
+                case INTEGER:
+                    return new BigInteger(readBytes());
+                case DECIMAL:
+                    return new BigDecimal(readString());
+                case CHARACTER:
+                    return (char) in.getInt();
+                case STRING:
+                    return readString();
+                default:
+                    throw new IllegalStateException("Unknown literal tag " + tag + ".");
+            }
+        }
+
+        private Optional<Environment.Variable> readVariable() {
+            if (in.get() == 0) {
+                return Optional.empty();
+            }
+            String name = readString();
+            String jvmName = readString();
+            Environment.Type type = readType().orElseThrow(() -> new IllegalStateException("Variable without a type."));
+            return Optional.of(new Environment.Variable(name, jvmName, type, Environment.NIL));
+        }
+
+        private Optional<Environment.Function> readFunction() {
+            if (in.get() == 0) {
+                return Optional.empty();
+            }
+            String name = readString();
+            String jvmName = readString();
+            List<Environment.Type> parameterTypes = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                parameterTypes.add(readType().orElseThrow(() -> new IllegalStateException("Parameter without a type.")));
+            }
+            Environment.Type returnType = readType().orElseThrow(() -> new IllegalStateException("Function without a return type."));
+            return Optional.of(new Environment.Function(name, jvmName, parameterTypes, returnType, args -> Environment.NIL));
+        }
+
+        private Optional<Environment.Type> readType() {
+            return in.get() == 0 ? Optional.empty() : Optional.of(Environment.getType(readString()));
+        }
+
+        private Ast.Expr readExpr() {
+            return (Ast.Expr) readAst();
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> readList() {
+            List<T> asts = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                asts.add((T) readAst());
+            }
+            return asts;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> Optional<T> readOptional() {
+            return in.get() == 0 ? Optional.empty() : Optional.of((T) readAst());
+        }
+
+        private List<String> readStrings() {
+            List<String> strings = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                strings.add(readString());
+            }
+            return strings;
+        }
+
+        private Optional<String> readOptionalString() {
+            return in.get() == 0 ? Optional.empty() : Optional.of(readString());
+        }
+
+        private String readString() {
+            return new String(readBytes(), StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes() {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            return bytes;
+        }
+
+    }
+
+    /*
+     * Analysis results throw if they were never set, these turn that into null
+     * so unanalyzed programs can still be stored.
+     */
+
+    private static Environment.Variable variableOf(Supplier<Environment.Variable> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static Environment.Function functionOf(Supplier<Environment.Function> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private static Environment.Type typeOf(Supplier<Environment.Type> getter) {
+        try {
+            return getter.get();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects the assignments among {@code statements}, including nested
+     * ones, in preorder.
+     */
+    private static List<Ast.Stmt.Assignment> assignments(List<Ast.Stmt> statements, List<Ast.Stmt.Assignment> assignments) {
+        for (Ast.Stmt stmt : statements) {
+            if (stmt instanceof Ast.Stmt.Assignment) {
+                assignments.add((Ast.Stmt.Assignment) stmt);
+            } else if (stmt instanceof Ast.Stmt.If) {
+                assignments(((Ast.Stmt.If) stmt).getThenStatements(), assignments);
+                assignments(((Ast.Stmt.If) stmt).getElseStatements(), assignments);
+            } else if (stmt instanceof Ast.Stmt.For) {
+                assignments(((Ast.Stmt.For) stmt).getStatements(), assignments);
+            } else if (stmt instanceof Ast.Stmt.While) {
+                assignments(((Ast.Stmt.While) stmt).getStatements(), assignments);
+            }
+        }
+        return assignments;
+    }
+
+}
@@ -0,0 +1,119 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+public class ProgramStoreTests {
+
+    private static final String SOURCE = "LET k: Integer = 3; LET d: Decimal = 1.5; LET s: String = \"a\\nb\"; LET y: Integer; DEF square(n: Integer): Integer DO RETURN n * n; END DEF main(): Integer DO LET t = 0; FOR i IN range(0, 2000) DO t = t + square(i); END IF y == NIL DO print(s + d); ELSE print(y); END WHILE t > 100 DO t = t / 7; END print(TRUE AND k > 2); RETURN t * k; END";
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            SOURCE,
+            "DEF main(): Integer DO RETURN 0; END",
+            "DEF count(n: Integer, acc: Integer): Integer DO IF n == 0 DO RETURN acc; END RETURN count(n - 1, acc + n); END DEF main(): Integer DO RETURN count(100, 0); END",
+    })
+    void testRoundTrip(String source) {
+        ProgramStore store = new ProgramStore(directory);
+        Ast.Source program = ProgramCache.compile(source);
+        store.save(source, program);
+        Optional<Ast.Source> loaded = store.load(source);
+        Assertions.assertTrue(loaded.isPresent());
+        Assertions.assertEquals(program, loaded.get());
+        Assertions.assertEquals(run(program), run(loaded.get()));
+        Assertions.assertEquals(program.getMethods().get(program.getMethods().size() - 1).getFrameSize(),
+                loaded.get().getMethods().get(loaded.get().getMethods().size() - 1).getFrameSize());
+    }
+
+    @Test
+    void testMissing() {
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+    }
+
+    @Test
+    void testFlippedByte() throws IOException {
+        Path path = save();
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 0x10;
+        Files.write(path, bytes);
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        Path path = save();
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 5));
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+        Files.write(path, Arrays.copyOf(bytes, 7));
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+    }
+
+    @Test
+    void testOtherVersion() throws IOException {
+        Path path = save();
+        byte[] bytes = Files.readAllBytes(path);
+        ByteBuffer.wrap(bytes).putInt(4, ProgramStore.VERSION + 1);
+        Files.write(path, bytes);
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+    }
+
+    @Test
+    void testGarbageWithValidChecksum() throws IOException {
+        Path path = save();
+        byte[] payload = new byte[64];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 37);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer file = ByteBuffer.allocate(20 + payload.length);
+        file.putInt(ProgramStore.MAGIC).putInt(ProgramStore.VERSION).putInt(payload.length).putLong(crc.getValue()).put(payload);
+        Files.write(path, file.array());
+        Assertions.assertEquals(Optional.empty(), new ProgramStore(directory).load(SOURCE));
+    }
+
+    @Test
+    void testOverwritesCorrupt() throws IOException {
+        Path path = save();
+        Files.write(path, new byte[] {1, 2, 3});
+        save();
+        Assertions.assertTrue(new ProgramStore(directory).load(SOURCE).isPresent());
+    }
+
+    @Test
+    void testCacheLoadsFromStore() {
+        ProgramStore store = new ProgramStore(directory);
+        new ProgramCache(1 << 20, store).get(SOURCE);
+        Ast.Source loaded = store.load(SOURCE).orElseThrow();
+        Assertions.assertEquals(run(ProgramCache.compile(SOURCE)), run(new ProgramCache(1 << 20, store).get(SOURCE)));
+        Assertions.assertEquals(ProgramCache.compile(SOURCE), loaded);
+    }
+
+    private Path save() {
+        new ProgramStore(directory).save(SOURCE, ProgramCache.compile(SOURCE));
+        return directory.resolve(ProgramCache.hash(SOURCE) + ".plcc");
+    }
+
+    private static String run(Ast.Source program) {
+        StringWriter writer = new StringWriter();
+        Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(program).getValue();
+        return writer + "result: " + result;
+    }
+
+}
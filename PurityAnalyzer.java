@@ -0,0 +1,152 @@
+package plc.project;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Marks the methods of a resolved {@link Ast.Source} as pure when their result
+ * depends only on their arguments: they don't read or assign fields, don't
+ * touch objects through a receiver, and only call methods that are pure
+ * themselves ({@code range} is, {@code print} and other host functions
+ * never are). Locals are recognised by the addresses the {@link Resolver}
+ * assigned, so it runs after resolution; {@link Resolver#visit(Ast.Source)}
+ * runs it.
+ * <p>
+ * Recursion is fine: methods start out pure and are marked impure until
+ * nothing changes, so a cycle is only impure if something in it is.
+ */
+public final class PurityAnalyzer implements Ast.Visitor<Void> {
+
+    private static final Set<String> PURE_FUNCTIONS = new HashSet<>(Arrays.asList("range/2", "range/3"));
+
+    private final Map<Ast.Method, Set<String>> calls = new IdentityHashMap<>();
+    private Set<String> called = null;
+    private boolean pure = true;
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        Map<String, Ast.Method> methods = new HashMap<>();
+        for (Ast.Method method : ast.getMethods()) {
+            methods.put(method.getName() + "/" + method.getParameters().size(), method);
+            visit(method);
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Ast.Method method : ast.getMethods()) {
+                if (method.isPure() && calls.get(method).stream().anyMatch(name -> !methods.containsKey(name) || !methods.get(name).isPure())) {
+                    method.setPure(false);
+                    changed = true;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        called = new HashSet<>();
+        pure = true;
+        ast.getStatements().forEach(this::visit);
+        calls.put(ast, called);
+        ast.setPure(pure);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        ast.getValue().ifPresent(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        visit(ast.getCondition());
+        ast.getThenStatements().forEach(this::visit);
+        ast.getElseStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        visit(ast.getValue());
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        visit(ast.getCondition());
+        ast.getStatements().forEach(this::visit);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        // anything that isn't a resolved local is a field or an object's field
+        if (ast.getReceiver().isPresent() || ast.getDepth() < 0) {
+            pure = false;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        if (ast.getReceiver().isPresent()) {
+            pure = false;
+        }
+        String name = ast.getName() + "/" + ast.getArguments().size();
+        if (!PURE_FUNCTIONS.contains(name)) {
+            called.add(name);
+        }
+        ast.getArguments().forEach(this::visit);
+        return null;
+    }
+
+}
@@ -0,0 +1,175 @@
+package plc.project;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns every local variable of a method a (depth, slot) address so the
+ * {@link Interpreter} can store locals in {@link Frame}s instead of walking a
+ * chain of {@link Scope} maps. Depth counts enclosing block frames, slot is
+ * the index within that frame. Names that aren't local (fields, or variables
+ * defined by the host in a {@link Scope}) are left unresolved and are still
+ * looked up by name at runtime.
+ */
+public final class Resolver implements Ast.Visitor<Void> {
+
+    private final Deque<Map<String, Integer>> blocks = new ArrayDeque<>();
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        ast.getMethods().forEach(this::visit);
+        new PurityAnalyzer().visit(ast);
+        new LoopAnalyzer().visit(ast);
+        new EscapeAnalyzer().visit(ast);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Field ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Method ast) {
+        blocks.push(new HashMap<>());
+        try {
+            ast.getParameters().forEach(this::define);
+            ast.getStatements().forEach(this::visit);
+            ast.setFrameSize(blocks.peek().size());
+        } finally {
+            blocks.pop();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Declaration ast) {
+        if (ast.getValue().isPresent()) {
+            visit(ast.getValue().get());
+        }
+        ast.setSlot(define(ast.getName()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.If ast) {
+        visit(ast.getCondition());
+        ast.setFrameSizes(block(ast.getThenStatements(), null), block(ast.getElseStatements(), null));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.For ast) {
+        visit(ast.getValue());
+        ast.setFrameSize(block(ast.getStatements(), ast.getName()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.While ast) {
+        visit(ast.getCondition());
+        ast.setFrameSize(block(ast.getStatements(), null));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Stmt.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Binary ast) {
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Access ast) {
+        if (ast.getReceiver().isPresent()) {
+            visit(ast.getReceiver().get());
+            return null;
+        }
+        int depth = 0;
+        for (Map<String, Integer> block : blocks) {
+            if (block.containsKey(ast.getName())) {
+                ast.setAddress(depth, block.get(ast.getName()));
+                return null;
+            }
+            depth++;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expr.Function ast) {
+        if (ast.getReceiver().isPresent()) {
+            visit(ast.getReceiver().get());
+        }
+        ast.getArguments().forEach(this::visit);
+        return null;
+    }
+
+    /**
+     * Resolves the statements of a nested block in a new frame, optionally
+     * binding {@code variable} (a FOR loop variable) to slot 0, and returns the
+     * size of the frame. Blocks that don't bind anything are resolved against
+     * the enclosing frame and return 0, meaning no frame is needed.
+     */
+    private int block(List<Ast.Stmt> statements, String variable) {
+        if (variable == null && statements.stream().noneMatch(stmt -> stmt instanceof Ast.Stmt.Declaration)) {
+            statements.forEach(this::visit);
+            return 0;
+        }
+        blocks.push(new HashMap<>());
+        try {
+            if (variable != null) {
+                define(variable);
+            }
+            statements.forEach(this::visit);
+            return blocks.peek().size();
+        } finally {
+            blocks.pop();
+        }
+    }
+
+    private int define(String name) {
+        Map<String, Integer> block = blocks.peek();
+        if (block == null) {
+            throw new RuntimeException("The variable " + name + " is not declared in a method.");
+        } else if (block.containsKey(name)) {
+            throw new RuntimeException("The variable " + name + " is already defined in this scope.");
+        }
+        block.put(name, block.size());
+        return block.get(name);
+    }
+
+}
@@ -0,0 +1,91 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ResolverTests {
+
+    @Test
+    void testMethodFrame() {
+        Ast.Method method = resolve("DEF f(a: Integer, b: Integer): Integer DO LET c = a + b; RETURN c; END DEF main(): Integer DO RETURN f(1, 2); END").getMethods().get(0);
+        Assertions.assertEquals(3, method.getFrameSize());
+        Assertions.assertEquals(2, ((Ast.Stmt.Declaration) method.getStatements().get(0)).getSlot());
+        Ast.Expr.Access c = (Ast.Expr.Access) ((Ast.Stmt.Return) method.getStatements().get(1)).getValue();
+        Assertions.assertEquals(0, c.getDepth());
+        Assertions.assertEquals(2, c.getSlot());
+    }
+
+    @Test
+    void testIfElseFrames() {
+        Ast.Method method = resolve("DEF main(): Integer DO LET x = 1; IF x > 0 DO LET y = 2; LET z = 3; x = y + z; ELSE x = 0; END RETURN x; END").getMethods().get(0);
+        Ast.Stmt.If stmt = (Ast.Stmt.If) method.getStatements().get(1);
+        Assertions.assertEquals(2, stmt.getThenFrameSize());
+        Assertions.assertEquals(0, stmt.getElseFrameSize());
+        Ast.Stmt.Assignment assignment = (Ast.Stmt.Assignment) stmt.getThenStatements().get(2);
+        Ast.Expr.Access x = (Ast.Expr.Access) assignment.getReceiver();
+        Assertions.assertEquals(List.of(1, 0), List.of(x.getDepth(), x.getSlot()));
+        Ast.Expr.Access z = (Ast.Expr.Access) ((Ast.Expr.Binary) assignment.getValue()).getRight();
+        Assertions.assertEquals(List.of(0, 1), List.of(z.getDepth(), z.getSlot()));
+        // the ELSE block declares nothing, so it uses the method's frame
+        Ast.Expr.Access elseX = (Ast.Expr.Access) ((Ast.Stmt.Assignment) stmt.getElseStatements().get(0)).getReceiver();
+        Assertions.assertEquals(List.of(0, 0), List.of(elseX.getDepth(), elseX.getSlot()));
+    }
+
+    @Test
+    void testForFrame() {
+        Ast.Method method = resolve("DEF main(): Integer DO LET s = 0; FOR i IN range(0, 3) DO LET d = i; s = s + d; END RETURN s; END").getMethods().get(0);
+        Ast.Stmt.For stmt = (Ast.Stmt.For) method.getStatements().get(1);
+        Assertions.assertEquals(2, stmt.getFrameSize());
+        Assertions.assertEquals(1, ((Ast.Stmt.Declaration) stmt.getStatements().get(0)).getSlot());
+    }
+
+    @Test
+    void testFieldsUnresolved() {
+        Ast.Method method = resolve("LET f: Integer = 1; DEF main(): Integer DO RETURN f; END").getMethods().get(0);
+        Assertions.assertEquals(-1, ((Ast.Expr.Access) ((Ast.Stmt.Return) method.getStatements().get(0)).getValue()).getDepth());
+    }
+
+    @Test
+    void testRedefined() {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer("DEF main(): Integer DO LET x = 1; LET x = 2; RETURN x; END").lex()).parseSource();
+        Assertions.assertThrows(RuntimeException.class, () -> new Resolver().visit(ast));
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRun(String test, String source, String expected) {
+        Lexer.reset();
+        Ast.Source ast = resolve(source);
+        StringWriter writer = new StringWriter();
+        Object result = new Interpreter(new Scope(null), new OutputSink(writer)).visit(ast).getValue();
+        Assertions.assertEquals(expected, writer.toString().replace(System.lineSeparator(), "\n") + result);
+    }
+
+    private static Stream<Arguments> testRun() {
+        return Stream.of(
+                Arguments.of("Same Names In Branches", "DEF main(): Integer DO LET x = 1; IF x > 0 DO LET y = 2; print(y); ELSE LET y = 3; print(y); END IF x < 0 DO LET y = 4; print(y); ELSE LET y = 5; print(y); END RETURN x; END", "2\n5\n1"),
+                Arguments.of("Shadowed Field", "LET x: Integer = 10; DEF main(): Integer DO print(x); LET x = 1; IF x > 0 DO LET y = x + 1; x = y; END RETURN x; END", "10\n2"),
+                Arguments.of("Declared Per Iteration", "DEF main(): Integer DO LET s = 0; FOR i IN range(0, 4) DO LET d: Integer; IF i > 1 DO d = i; ELSE d = 0; END s = s + d; END RETURN s; END", "5"),
+                Arguments.of("While Block", "DEF main(): Integer DO LET i = 0; LET s = 0; WHILE i < 3 DO LET t = i * 2; s = s + t; i = i + 1; END RETURN s; END", "6"),
+                Arguments.of("Recursion", "DEF fact(n: Integer): Integer DO IF n < 2 DO RETURN 1; END LET m = n - 1; RETURN n * fact(m); END DEF main(): Integer DO RETURN fact(10); END", "3628800"),
+                Arguments.of("Field Assigned", "LET total: Integer = 0; DEF add(n: Integer): Integer DO total = total + n; RETURN total; END DEF main(): Integer DO add(2); add(3); RETURN total; END", "5")
+        );
+    }
+
+    private static Ast.Source resolve(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        new Resolver().visit(ast);
+        return ast;
+    }
+
+}
@@ -8,8 +8,20 @@ public final class Scope {
     private final Scope parent;
     private final Map<String, Environment.Variable> variables = new HashMap<>();
     private final Map<String, Environment.Function> functions = new HashMap<>();
+    private final boolean frozen;
     public Scope(Scope parent) {
+        this(parent, false);
+    }
+    private Scope(Scope parent, boolean frozen) {
         this.parent = parent;
+        this.frozen = frozen;
+    }
+    /**
+     * Returns an empty scope that nothing can be defined in, so it can be
+     * shared by any number of objects and threads.
+     */
+    public static Scope frozen() {
+        return new Scope(null, true);
     }
     public Scope getParent() {
         return parent;
@@ -18,7 +30,9 @@ public final class Scope {
         defineVariable(name, name, Environment.Type.ANY, value);
     }
     public Environment.Variable defineVariable(String name, String jvmName, Environment.Type type, Environment.PlcObject value) {
-        if (variables.containsKey(name)) {
+        if (frozen) {
+            throw new RuntimeException("The variable " + name + " can't be defined in a frozen scope.");
+        } else if (variables.containsKey(name)) {
             throw new RuntimeException("The variable " + name + " is already defined in this scope.");
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName,
@@ -44,7 +58,10 @@ public final class Scope {
         defineFunction(name, name, parameterTypes, Environment.Type.ANY, function);
     }
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
+        if (frozen) {
+            throw new RuntimeException("The function " + name + "/" +
+                    parameterTypes.size() + " can't be defined in a frozen scope.");
+        } else if (functions.containsKey(name + "/" + parameterTypes.size())) {
             throw new RuntimeException("The function " + name + "/" +
                     parameterTypes.size() + " is already defined in this scope.");
         } else {
@@ -0,0 +1,132 @@
+package plc.project;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs many programs concurrently. Every run gets its own {@link Interpreter}
+ * (and so its own scopes, frames and output), while the {@link Ast.Source}
+ * itself is shared: it is resolved once before its first run and never
+ * modified afterwards.
+ * <p>
+ * By default runs are scheduled on virtual threads when the JVM supports them
+ * (Java 21+), and on a pool with one thread per processor otherwise.
+ */
+public final class ScriptService implements AutoCloseable {
+
+    private final ExecutorService executor;
+
+    public ScriptService() {
+        this(defaultExecutor());
+    }
+
+    public ScriptService(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs {@code source} and collects everything it prints into the result.
+     */
+    public Future<Result> submit(Ast.Source source) {
+        return submit(source, ExecutionBudget.unlimited());
+    }
+
+    /**
+     * Same as {@link #submit(Ast.Source)}, but the run is stopped with
+     * {@link ExecutionBudget.Exceeded} once {@code budget} runs out. Cancelling
+     * the returned future with interruption also stops the run.
+     */
+    public Future<Result> submit(Ast.Source source, ExecutionBudget budget) {
+        prepare(source);
+        return executor.submit(() -> {
+            StringWriter output = new StringWriter();
+            Environment.PlcObject value = run(source, output, budget);
+            return new Result(value, output.toString());
+        });
+    }
+
+    /**
+     * Runs {@code source}, writing everything it prints to {@code output}. The
+     * writer is flushed when the run finishes, but not closed.
+     */
+    public Future<Environment.PlcObject> submit(Ast.Source source, Writer output) {
+        prepare(source);
+        return executor.submit(() -> run(source, output, ExecutionBudget.unlimited()));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Environment.PlcObject run(Ast.Source source, Writer output, ExecutionBudget budget) {
+        OutputSink sink = new OutputSink(output);
+        try {
+            Interpreter interpreter = new Interpreter(new Scope(null), sink);
+            interpreter.setBudget(budget);
+            return interpreter.visit(source);
+        } finally {
+            sink.flush();
+        }
+    }
+
+    /**
+     * Resolves the source before it is shared between threads, so runs only
+     * ever read the AST. Submitting happens-before the run starts, which
+     * publishes the resolved slots to the worker thread.
+     */
+    private static void prepare(Ast.Source source) {
+        synchronized (source) {
+            if (source.getMethods().stream().anyMatch(method -> method.getFrameSize() < 0)) {
+                new Resolver().visit(source);
+            }
+        }
+    }
+
+    private static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    public static final class Result {
+
+        private final Environment.PlcObject value;
+        private final String output;
+
+        public Result(Environment.PlcObject value, String output) {
+            this.value = value;
+            this.output = output;
+        }
+
+        public Environment.PlcObject getValue() {
+            return value;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "value=" + value.getValue() +
+                    ", output='" + output + '\'' +
+                    '}';
+        }
+
+    }
+
+}
@@ -0,0 +1,95 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class ScriptServiceTests {
+
+    private static final String SUM = "LET n: Integer = 2000; DEF fib(k: Integer): Integer DO IF k < 2 DO RETURN k; END RETURN fib(k - 1) + fib(k - 2); END DEF main(): Integer DO LET s = 0; FOR i IN range(0, n) DO s = s + i; END print(s); RETURN fib(15); END";
+
+    @Test
+    void testSharedSource() throws Exception {
+        Ast.Source ast = analyze(SUM);
+        try (ScriptService service = new ScriptService(Executors.newFixedThreadPool(4))) {
+            List<Future<ScriptService.Result>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(service.submit(ast));
+            }
+            for (Future<ScriptService.Result> result : results) {
+                Assertions.assertEquals(BigInteger.valueOf(610), result.get(10, TimeUnit.SECONDS).getValue().getValue());
+                Assertions.assertEquals("1999000" + System.lineSeparator(), result.get().getOutput());
+            }
+        }
+    }
+
+    @Test
+    void testDefaultExecutor() throws Exception {
+        try (ScriptService service = new ScriptService()) {
+            Future<ScriptService.Result> first = service.submit(analyze(SUM));
+            Future<ScriptService.Result> second = service.submit(analyze("DEF main(): Integer DO print(\"b\"); RETURN 2; END"));
+            Assertions.assertEquals(BigInteger.valueOf(610), first.get(10, TimeUnit.SECONDS).getValue().getValue());
+            Assertions.assertEquals("b" + System.lineSeparator(), second.get(10, TimeUnit.SECONDS).getOutput());
+        }
+    }
+
+    @Test
+    void testWriter() throws Exception {
+        StringWriter writer = new StringWriter();
+        try (ScriptService service = new ScriptService(Executors.newSingleThreadExecutor())) {
+            Future<Environment.PlcObject> result = service.submit(analyze("DEF main(): Integer DO print(1); print(2); RETURN 3; END"), writer);
+            Assertions.assertEquals(BigInteger.valueOf(3), result.get(10, TimeUnit.SECONDS).getValue());
+        }
+        Assertions.assertEquals("1" + System.lineSeparator() + "2" + System.lineSeparator(), writer.toString());
+    }
+
+    @Test
+    void testError() throws Exception {
+        try (ScriptService service = new ScriptService(Executors.newSingleThreadExecutor())) {
+            Future<ScriptService.Result> result = service.submit(analyze("DEF main(): Integer DO LET x = 0; RETURN 1 / x; END"));
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals("Division by zero error", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    void testBudget() throws Exception {
+        try (ScriptService service = new ScriptService(Executors.newSingleThreadExecutor())) {
+            Future<ScriptService.Result> result = service.submit(analyze("DEF main(): Integer DO WHILE TRUE DO END RETURN 0; END"), new ExecutionBudget(100000, Duration.ofSeconds(10)));
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(e.getCause() instanceof ExecutionBudget.Exceeded, e.getCause().toString());
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ScriptService service = new ScriptService(executor)) {
+            Future<ScriptService.Result> result = service.submit(analyze("DEF main(): Integer DO WHILE TRUE DO END RETURN 0; END"));
+            Thread.sleep(100);
+            Assertions.assertTrue(result.cancel(true));
+            // the worker only becomes free again if the run stopped
+            Future<ScriptService.Result> next = service.submit(analyze("DEF main(): Integer DO RETURN 1; END"));
+            Assertions.assertEquals(BigInteger.ONE, next.get(10, TimeUnit.SECONDS).getValue().getValue());
+        }
+        Assertions.assertTrue(executor.isTerminated());
+    }
+
+    private static Ast.Source analyze(String source) {
+        Lexer.reset();
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return ast;
+    }
+
+}
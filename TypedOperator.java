@@ -0,0 +1,179 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The implementation of a binary operator chosen from the types the
+ * {@link Analyzer} gave its operands, so the {@link Interpreter} doesn't have
+ * to dispatch on the operator string and the classes of the values every
+ * time it is evaluated. A specialized operator only handles the values its
+ * types promise (e.g. Integers that fit in a long for {@link #INTEGER_ADD})
+ * and leaves anything else, including overflow, NIL and errors, to
+ * {@link Interpreter#binary}, so results are the same as without it.
+ * <p>
+ * This is an enum evaluated by a single switch rather than a function per
+ * operator, which keeps the call from the interpreter monomorphic.
+ */
+public enum TypedOperator {
+
+    INTEGER_ADD,
+    INTEGER_SUBTRACT,
+    INTEGER_MULTIPLY,
+    INTEGER_DIVIDE,
+    INTEGER_LESS,
+    INTEGER_LESS_EQUAL,
+    INTEGER_GREATER,
+    INTEGER_GREATER_EQUAL,
+    INTEGER_EQUAL,
+    INTEGER_NOT_EQUAL,
+    DECIMAL_ADD,
+    DECIMAL_SUBTRACT,
+    DECIMAL_MULTIPLY,
+    DECIMAL_DIVIDE,
+    STRING_CONCAT,
+    GENERIC;
+
+    /**
+     * Returns the operator for {@code ast}, an analyzed binary expression
+     * other than AND/OR, or {@link #GENERIC} if it wasn't analyzed.
+     */
+    public static TypedOperator of(Ast.Expr.Binary ast) {
+        try {
+            return of(ast.getOperator(), ast.getLeft().getType(), ast.getRight().getType());
+        } catch (IllegalStateException e) {
+            return GENERIC;
+        }
+    }
+
+    public static TypedOperator of(String operator, Environment.Type left, Environment.Type right) {
+        if (left == Environment.Type.INTEGER && right == Environment.Type.INTEGER) {
+            switch (operator) {
+                case "+": return INTEGER_ADD;
+                case "-": return INTEGER_SUBTRACT;
+                case "*": return INTEGER_MULTIPLY;
+                case "/": return INTEGER_DIVIDE;
+                case "<": return INTEGER_LESS;
+                case "<=": return INTEGER_LESS_EQUAL;
+                case ">": return INTEGER_GREATER;
+                case ">=": return INTEGER_GREATER_EQUAL;
+                case "==": return INTEGER_EQUAL;
+                case "!=": return INTEGER_NOT_EQUAL;
+                default: return GENERIC;
+            }
+        } else if (left == Environment.Type.DECIMAL && right == Environment.Type.DECIMAL) {
+            switch (operator) {
+                case "+": return DECIMAL_ADD;
+                case "-": return DECIMAL_SUBTRACT;
+                case "*": return DECIMAL_MULTIPLY;
+                case "/": return DECIMAL_DIVIDE;
+                default: return GENERIC;
+            }
+        } else if (operator.equals("+") && (left == Environment.Type.STRING || right == Environment.Type.STRING)) {
+            return STRING_CONCAT;
+        }
+        return GENERIC;
+    }
+
+    /**
+     * Applies the operator, {@code operator} being its source form for the
+     * generic fallback.
+     */
+    public Environment.PlcObject apply(String operator, Environment.PlcObject left, Environment.PlcObject right) {
+        if (isInteger()) {
+            if (left.isSmallInteger() && right.isSmallInteger() && isExact(left.getLong(), right.getLong())) {
+                long result = applyLong(left.getLong(), right.getLong());
+                return isComparison() ? Environment.create(result != 0) : Environment.createInteger(result);
+            }
+        } else if (this != GENERIC) {
+            Object leftValue = left.getValue();
+            Object rightValue = right.getValue();
+            if (this == STRING_CONCAT) {
+                if (leftValue instanceof String || rightValue instanceof String)
+                    return Environment.create(leftValue.toString() + rightValue.toString());
+            } else if (leftValue instanceof BigDecimal && rightValue instanceof BigDecimal) {
+                return decimal((BigDecimal) leftValue, (BigDecimal) rightValue);
+            }
+        }
+        return Interpreter.binary(operator, left, right);
+    }
+
+    /**
+     * Returns whether this is one of the operators on two Integers.
+     */
+    public boolean isInteger() {
+        return ordinal() <= INTEGER_NOT_EQUAL.ordinal();
+    }
+
+    public boolean isComparison() {
+        return ordinal() >= INTEGER_LESS.ordinal() && ordinal() <= INTEGER_NOT_EQUAL.ordinal();
+    }
+
+    /**
+     * Returns whether {@link #applyLong} gives the right result for an
+     * Integer operator, i.e. it doesn't overflow a long or fail. Division by
+     * zero and MIN_VALUE / -1 are left to the generic path.
+     */
+    public boolean isExact(long left, long right) {
+        switch (this) {
+            case INTEGER_ADD: {
+                long sum = left + right;
+                return ((left ^ sum) & (right ^ sum)) >= 0;
+            }
+            case INTEGER_SUBTRACT: {
+                long difference = left - right;
+                return ((left ^ right) & (left ^ difference)) >= 0;
+            }
+            case INTEGER_MULTIPLY:
+                return Math.multiplyHigh(left, right) == (left * right) >> 63;
+            case INTEGER_DIVIDE:
+                return right != 0 && right != -1;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Applies an Integer operator to longs, comparisons giving 1 or 0.
+     */
+    public long applyLong(long left, long right) {
+        switch (this) {
+            case INTEGER_ADD:
+                return left + right;
+            case INTEGER_SUBTRACT:
+                return left - right;
+            case INTEGER_MULTIPLY:
+                return left * right;
+            case INTEGER_DIVIDE:
+                return left / right;
+            case INTEGER_LESS:
+                return left < right ? 1 : 0;
+            case INTEGER_LESS_EQUAL:
+                return left <= right ? 1 : 0;
+            case INTEGER_GREATER:
+                return left > right ? 1 : 0;
+            case INTEGER_GREATER_EQUAL:
+                return left >= right ? 1 : 0;
+            case INTEGER_EQUAL:
+                return left == right ? 1 : 0;
+            case INTEGER_NOT_EQUAL:
+                return left != right ? 1 : 0;
+            default:
+                throw new UnsupportedOperationException(this + " is not an Integer operator.");
+        }
+    }
+
+    private Environment.PlcObject decimal(BigDecimal left, BigDecimal right) {
+        switch (this) {
+            case DECIMAL_ADD:
+                return Environment.create(left.add(right));
+            case DECIMAL_SUBTRACT:
+                return Environment.create(left.subtract(right));
+            case DECIMAL_MULTIPLY:
+                return Environment.create(left.multiply(right));
+            default:
+                return Environment.create(left.divide(right, RoundingMode.HALF_EVEN));
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+public class TypedOperatorTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testOf(String operator, Environment.Type left, Environment.Type right, TypedOperator expected) {
+        Assertions.assertEquals(expected, TypedOperator.of(operator, left, right));
+    }
+
+    private static Stream<Arguments> testOf() {
+        return Stream.of(
+                Arguments.of("+", Environment.Type.INTEGER, Environment.Type.INTEGER, TypedOperator.INTEGER_ADD),
+                Arguments.of("!=", Environment.Type.INTEGER, Environment.Type.INTEGER, TypedOperator.INTEGER_NOT_EQUAL),
+                Arguments.of("/", Environment.Type.DECIMAL, Environment.Type.DECIMAL, TypedOperator.DECIMAL_DIVIDE),
+                Arguments.of("<", Environment.Type.DECIMAL, Environment.Type.DECIMAL, TypedOperator.GENERIC),
+                Arguments.of("+", Environment.Type.INTEGER, Environment.Type.STRING, TypedOperator.STRING_CONCAT),
+                Arguments.of("+", Environment.Type.INTEGER, Environment.Type.DECIMAL, TypedOperator.GENERIC),
+                Arguments.of("+", Environment.Type.COMPARABLE, Environment.Type.INTEGER, TypedOperator.GENERIC),
+                Arguments.of("AND", Environment.Type.BOOLEAN, Environment.Type.BOOLEAN, TypedOperator.GENERIC)
+        );
+    }
+
+    @Test
+    void testIsExact() {
+        Assertions.assertTrue(TypedOperator.INTEGER_ADD.isExact(Long.MAX_VALUE - 1, 1));
+        Assertions.assertFalse(TypedOperator.INTEGER_ADD.isExact(Long.MAX_VALUE, 1));
+        Assertions.assertFalse(TypedOperator.INTEGER_SUBTRACT.isExact(Long.MIN_VALUE, 1));
+        Assertions.assertFalse(TypedOperator.INTEGER_MULTIPLY.isExact(1L << 32, 1L << 31));
+        Assertions.assertTrue(TypedOperator.INTEGER_MULTIPLY.isExact(-(1L << 32), 1L << 31));
+        Assertions.assertFalse(TypedOperator.INTEGER_DIVIDE.isExact(1, 0));
+        Assertions.assertFalse(TypedOperator.INTEGER_DIVIDE.isExact(Long.MIN_VALUE, -1));
+        Assertions.assertTrue(TypedOperator.INTEGER_LESS.isExact(Long.MIN_VALUE, -1));
+    }
+
+    @Test
+    void testApply() {
+        Environment.PlcObject max = Environment.createInteger(Long.MAX_VALUE);
+        Environment.PlcObject one = Environment.createInteger(1);
+        Assertions.assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE), TypedOperator.INTEGER_ADD.apply("+", max, one).getValue());
+        Assertions.assertEquals(Boolean.TRUE, TypedOperator.INTEGER_GREATER.apply(">", max, one).getValue());
+        Assertions.assertEquals(new BigDecimal("3.0"), TypedOperator.DECIMAL_MULTIPLY.apply("*", Environment.create(new BigDecimal("1.5")), Environment.create(new BigDecimal("2"))).getValue());
+        Assertions.assertEquals("1a", TypedOperator.STRING_CONCAT.apply("+", one, Environment.create("a")).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> TypedOperator.INTEGER_ADD.apply("+", Environment.NIL, one));
+    }
+
+}